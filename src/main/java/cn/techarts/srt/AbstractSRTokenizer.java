@@ -16,35 +16,198 @@
 
 package cn.techarts.srt;
 
-import java.util.Base64;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
 
 import cn.techarts.srt.core.Configuration;
 import cn.techarts.srt.core.MicroState;
 import cn.techarts.srt.core.SRToken;
+import cn.techarts.srt.core.SRTokenView;
 import cn.techarts.srt.core.Session;
+import cn.techarts.srt.util.Base64Url;
+import cn.techarts.srt.util.ByteBuf;
+import cn.techarts.srt.util.CipherEngine;
 
 public abstract class AbstractSRTokenizer implements SRTokenizer {
+	/**
+	 * The shortest token: NONCE + TAG + the fixed claims(15 bytes) + 1 byte UID
+	 */
+	protected static final int MIN_TOKEN_LENGTH = base64Length(CipherEngine.sizeOf(16));
+	
+	/**
+	 * Far beyond a real token, including a few hundreds bytes associated data
+	 */
+	protected static final int MAX_TOKEN_LENGTH = 2048;
+	
+	/**
+	 * The max number of micro-states written in one bulk operation
+	 */
+	protected static final int BATCH_SIZE = 1000;
+	
+	private static int base64Length(int bytes) {
+		return (bytes * 4 + 2) / 3; //Without padding
+	}
+	
+	/**
+	 * The decoded(then decrypted in place) tokens of current thread
+	 */
+	private static final ThreadLocal<byte[]> BUFFERS = 
+			ThreadLocal.withInitial(() -> new byte[MAX_TOKEN_LENGTH * 3 / 4]);
+	
 	@Override
 	public String issue(Session session, Configuration config, byte[] data) {
+		var plain = SRToken.lengthOf(session, config, data);
+		var result = new char[Base64Url.encodedLength(CipherEngine.sizeOf(plain))];
+		return new String(result, 0, issue(session, config, data, result, 0));
+	}
+	
+	@Override
+	public int issue(Session session, Configuration config, byte[] data, char[] target, int start) {
+		var state = new MicroState();
+		var result = mint(session, config, data, target, start, state);
+		setState(session.getUid(), state.getSalt(), state.getHash());
+		return result;
+	}
+	
+	/**
+	 * Encrypts in parallel, then saves all micro-states in one go via {@link #setStates}.
+	 * The sessions are handled in chunks of {@value BATCH_SIZE}.
+	 * @return The tokens in the same order of the sessions
+	 */
+	@Override
+	public List<String> issue(List<Session> sessions, Configuration config) {
+		if(sessions == null || sessions.isEmpty()) return List.of();
+		var result = new String[sessions.size()];
+		for(int from = 0; from < result.length; from += BATCH_SIZE) {
+			var to = Math.min(from + BATCH_SIZE, result.length);
+			var states = new MicroState[to - from];
+			var offset = from;
+			IntStream.range(from, to).parallel().forEach(i -> {
+				var session = sessions.get(i);
+				var state = new MicroState();
+				state.setUid(session.getUidString());
+				var plain = SRToken.lengthOf(session, config, null);
+				var token = new char[Base64Url.encodedLength(CipherEngine.sizeOf(plain))];
+				var length = mint(session, config, null, token, 0, state);
+				result[i] = new String(token, 0, length);
+				states[i - offset] = state;
+			});
+			setStates(Arrays.asList(states));
+		}
+		return Arrays.asList(result);
+	}
+	
+	/**
+	 * Encodes, hashes and encrypts a token into the target without saving the micro-state.
+	 * @param state Receives the salt and context hash
+	 */
+	private int mint(Session session, Configuration config, byte[] data, char[] target, int start, MicroState state) {
 		var token = new SRToken();
-		var b64encoder = Base64.getUrlEncoder();
 		var extend = getExtend(session, config);
-		var content = token.encode(session, config, extend, data);
-		var hash = MicroState.calcContextHash(content);
-		setState(session.getUid(), token.getRandomSalt(), hash);
-		return b64encoder.encodeToString(config.encrypt(content));
+		var plain = SRToken.lengthOf(session, config, data);
+		var buffer = ByteBuf.local(plain + CipherEngine.sizeOf(plain));
+		var length = token.encode(session, config, extend, data, buffer);
+		var content = buffer.array(); //Reused per thread: PLAIN + ENCRYPTED
+		state.setSalt(token.getRandomSalt());
+		state.setHash(config.calcContextHash(content, 0, length));
+		var encrypted = config.getEngine().encrypt(content, 0, length, content, length);
+		return Base64Url.encode(content, length, encrypted, target, start);
 	}
 	
-	private SRToken decode(String token, Configuration config) {
-		var decoder = Base64.getUrlDecoder();
-		var content = decoder.decode(token);
-		content = config.decrypt(content);
-		return new SRToken(content, config);
+	/**
+	 * A cheap structural check of the token length before any decoding and cipher operation.
+	 * The BASE64URL alphabet is verified while decoding.
+	 */
+	protected static boolean isWellFormed(CharSequence token) {
+		if(token == null) return false;
+		var length = token.length();
+		if(length < MIN_TOKEN_LENGTH) return false;
+		return length <= MAX_TOKEN_LENGTH;
 	}
 
 	@Override
-	public Result verify(String token, Session session, Configuration config) {
-		var srtoken = decode(token, config);
+	public Result verify(CharSequence token, Session session, Configuration config) {
+		var srtoken = new SRTokenView();
+		var result = verifyClaims(token, session, config, BUFFERS.get(), srtoken);
+		if(result != null) return result; //Rejected or UCM
+		return verifyState(srtoken, config);
+	}
+	
+	/**
+	 * Runs the stateless steps 1~5 for every token locally, then fetches all 
+	 * required micro-states in one go via {@link #getStates(List)}.
+	 * @param sessions The session of each token(the same size and order)
+	 * @return The results in the same order of the tokens
+	 */
+	@Override
+	public List<Result> verify(List<? extends CharSequence> tokens, List<Session> sessions, Configuration config) {
+		if(tokens == null || tokens.isEmpty()) return List.of();
+		if(sessions == null || sessions.size() != tokens.size()) {
+			throw new IllegalArgumentException("Each token requires a session.");
+		}
+		var count = tokens.size();
+		var result = new Result[count];
+		var views = new SRTokenView[count];
+		for(int i = 0; i < count; i++) {
+			var token = tokens.get(i);
+			if(!isWellFormed(token)) {
+				result[i] = Result.ERR_FORMAT;
+				continue;
+			}
+			views[i] = new SRTokenView(); //Each token keeps its own buffer
+			var buffer = new byte[Math.max(0, Base64Url.decodedLength(token))];
+			result[i] = verifyClaims(token, sessions.get(i), config, buffer, views[i]);
+		}
+		var keys = new ArrayList<MicroState>();
+		var pending = new int[count];
+		for(int i = 0; i < count; i++) {
+			if(result[i] != null) continue;
+			pending[keys.size()] = i;
+			var view = views[i];
+			var key = new MicroState(view.getUid(), view.getLongSalt(), null);
+			key.setTimestamp(view.getTimestamp()); //Routing and partition pruning
+			keys.add(key);
+		}
+		for(int from = 0; from < keys.size(); from += BATCH_SIZE) {
+			var to = Math.min(from + BATCH_SIZE, keys.size());
+			var states = getStates(keys.subList(from, to));
+			for(int k = from; k < to; k++) {
+				var i = pending[k];
+				result[i] = verifyState(views[i], states.get(k - from), config);
+			}
+		}
+		return Arrays.asList(result);
+	}
+	
+	/**
+	 * The token is decoded into its own buffer, because the state arrives on another thread.
+	 */
+	@Override
+	public CompletableFuture<Result> verifyAsync(CharSequence token, Session session, Configuration config) {
+		if(!isWellFormed(token)) return CompletableFuture.completedFuture(Result.ERR_FORMAT);
+		var srtoken = new SRTokenView();
+		var buffer = new byte[Math.max(0, Base64Url.decodedLength(token))];
+		var result = verifyClaims(token, session, config, buffer, srtoken);
+		if(result != null) return CompletableFuture.completedFuture(result);
+		var state = getStateAsync(srtoken.getUid(), srtoken.getLongSalt());
+		return state.thenApply(s -> verifyState(srtoken, s, config));
+	}
+	
+	/**
+	 * Decodes and decrypts in place into the buffer, then runs the steps 1~5. 
+	 * @return The result, or null if the micro-state validation is required.
+	 */
+	private Result verifyClaims(CharSequence token, Session session, Configuration config, byte[] buffer, SRTokenView srtoken) {
+		if(!isWellFormed(token)) return Result.ERR_FORMAT;
+		var length = Base64Url.decode(token, buffer, 0);
+		if(length < 0) return Result.ERR_FORMAT;
+		length = config.getEngine().tryDecrypt(buffer, 0, length, buffer, 0);
+		if(length < 0) return Result.ERR_CRYPT; //Decrypted in place
+		srtoken.wrap(buffer, 0, length);
+		if(!srtoken.isWellFormed()) return Result.ERR_FORMAT;
 		// Step 1
 		if(!srtoken.isVersionSupported()) return Result.ERR_VER;
 		// Step 2
@@ -58,21 +221,81 @@ public abstract class AbstractSRTokenizer implements SRTokenizer {
 		// Step 5
 		if(!srtoken.checkUA(session.getUa())) return Result.ERR_UA;
 		// End of UCM		
-		if(config.isUserCollaborationMode()) return Result.OK;
-		
-		// The following is Micro-State validation
+		return config.isUserCollaborationMode() ? Result.OK : null;
+	}
+	
+	/**
+	 * Fetches the micro-state, then runs the steps 6~7 locally.
+	 * A store may override it to check the state on the server in one round trip.
+	 * It's public, so a wrapper(e.g. {@link cn.techarts.srt.impl.GuardedTokenizer}) can delegate to it.
+	 */
+	public Result verifyState(SRTokenView srtoken, Configuration config) {
 		var state = getState(srtoken.getUid(), srtoken.getLongSalt());
+		return verifyState(srtoken, state, config);
+	}
+	
+	/**
+	 * The Micro-State validation: steps 6~7
+	 */
+	protected Result verifyState(SRTokenView srtoken, MicroState state, Configuration config) {
 		if(state == null || state.getSalt() == 0) return Result.ERR_STATE;
 		// Step 6
 		if(config.isPerSessionStateMode()) {
-			if(!state.checkHash(srtoken.getContextHash())) return Result.ERR_HASH;
+			if(!state.checkHash(srtoken.getContextHash(config))) return Result.ERR_HASH;
 		}
 		// Step 7
 		return state.checkSalt(srtoken.getLongSalt()) ?  Result.OK : Result.ERR_SALT;
 	}
 	
 	@Override
-	public void setState(byte[] uid, long salt, String hash) {
+	public void setState(byte[] uid, long salt, byte[] hash) {
 		this.setState(new MicroState(uid, salt, hash));
 	}
+	
+	/**
+	 * Blocking by default. A store should override it with a non-blocking client.
+	 */
+	@Override
+	public CompletableFuture<MicroState> getStateAsync(byte[] uid, long salt) {
+		try {
+			return CompletableFuture.completedFuture(getState(uid, salt));
+		}catch(RuntimeException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+	
+	/**
+	 * Blocking by default. A store should override it with a non-blocking client.
+	 */
+	@Override
+	public CompletableFuture<Void> setStateAsync(byte[] uid, long salt, byte[] hash) {
+		try {
+			setState(uid, salt, hash);
+			return CompletableFuture.completedFuture(null);
+		}catch(RuntimeException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+	
+	/**
+	 * One by one by default. A store should override it with a bulk lookup.
+	 */
+	@Override
+	public List<MicroState> getStates(List<MicroState> keys) {
+		if(keys == null || keys.isEmpty()) return List.of();
+		var result = new ArrayList<MicroState>(keys.size());
+		for(var key : keys) {
+			result.add(getState(key.getUid().getBytes(), key.getSalt()));
+		}
+		return result;
+	}
+	
+	/**
+	 * One by one by default. A store should override it with a bulk write.
+	 */
+	@Override
+	public void setStates(List<MicroState> states) {
+		if(states == null) return;
+		for(var state : states) setState(state);
+	}
 }
\ No newline at end of file
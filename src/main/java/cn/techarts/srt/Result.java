@@ -36,7 +36,11 @@ public enum Result {
 	/**Invalid Context Hash*/
 	ERR_HASH(-7),
 	/**Invalid State*/
-	ERR_STATE(-8);
+	ERR_STATE(-8),
+	/**Malformed Token(length, alphabet or layout)*/
+	ERR_FORMAT(-9),
+	/**Decryption Failed(forged or damaged token)*/
+	ERR_CRYPT(-10);
 	
 	private int code;
 	
@@ -47,4 +51,14 @@ public enum Result {
 	public int getCode() {
 		return this.code;
 	}
+	
+	/**
+	 * @return NULL if the code is unknown
+	 */
+	public static Result of(int code) {
+		for(var result : values()) {
+			if(result.code == code) return result;
+		}
+		return null;
+	}
 }
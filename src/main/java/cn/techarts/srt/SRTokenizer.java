@@ -17,6 +17,7 @@
 package cn.techarts.srt;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import cn.techarts.srt.core.Configuration;
 import cn.techarts.srt.core.MicroState;
@@ -25,12 +26,52 @@ import cn.techarts.srt.core.Session;
 public interface SRTokenizer {
 	public byte getExtend(Session session, Configuration config);
 	public String issue(Session session, Configuration config, byte[] data);
-	public Result verify(String token, Session session, Configuration config);
-	public void setState(byte[] uid, long salt, String hash);
+	
+	/**
+	 * Writes the BASE64URL token into the caller-supplied chars without building a String.
+	 * @return The number of written chars
+	 */
+	public int issue(Session session, Configuration config, byte[] data, char[] target, int start);
+	
+	/**
+	 * Bulk minting: the micro-states are saved in batches.
+	 * @return The tokens in the same order of the sessions
+	 */
+	public List<String> issue(List<Session> sessions, Configuration config);
+	
+	/**
+	 * @param token The BASE64URL text, e.g. the request parameter. 
+	 */
+	public Result verify(CharSequence token, Session session, Configuration config);
+	
+	/**
+	 * Bulk verification with ONE grouped micro-state lookup.
+	 * @param sessions The session of each token(the same size and order)
+	 * @return The results in the same order of the tokens
+	 */
+	public List<Result> verify(List<? extends CharSequence> tokens, List<Session> sessions, Configuration config);
+	
+	/**
+	 * The same as {@link #verify(CharSequence, Session, Configuration)} but the 
+	 * micro-state is fetched without blocking the caller.
+	 */
+	public CompletableFuture<Result> verifyAsync(CharSequence token, Session session, Configuration config);
+	public void setState(byte[] uid, long salt, byte[] hash);
 	public void setState(MicroState state);
+	public void setStates(List<MicroState> states);
 	public MicroState getState(byte[] uid, long salt);
+	
+	public CompletableFuture<MicroState> getStateAsync(byte[] uid, long salt);
+	
+	public CompletableFuture<Void> setStateAsync(byte[] uid, long salt, byte[] hash);
 	public List<MicroState> getStates(byte[] uid);
 	
+	/**
+	 * @param keys The UID, salt and the token timestamp(if known) of each required state
+	 * @return The states in the same order of the keys(NULL if absent)
+	 */
+	public List<MicroState> getStates(List<MicroState> keys);
+	
 	/**
 	 * User-Oriented Revocation
 	 */
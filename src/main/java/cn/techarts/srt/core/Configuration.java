@@ -16,8 +16,10 @@
 
 package cn.techarts.srt.core;
 
+import cn.techarts.srt.Extendable;
 import cn.techarts.srt.RevocationMode;
 import cn.techarts.srt.ValidationMode;
+import cn.techarts.srt.util.CipherEngine;
 import cn.techarts.srt.util.Cryptor;
 
 public class Configuration {
@@ -27,6 +29,8 @@ public class Configuration {
 	private byte[] secretKey;
 	private int revocationMode;
 	private int validationMode;
+	private CipherEngine engine;
+	private int hashLength = MicroState.HASH_LENGTH;
 	
 	public static final String TEST_KEY = "83ee04d15080db21cc46ed5849c38c7d";
 	
@@ -35,7 +39,7 @@ public class Configuration {
 	public Configuration(String key, String duration, String extend, String cuc, String revocationMode, String validationMode) {
 		this.cuc = "0".equals(cuc);
 		this.extend = Byte.parseByte(extend);
-		this.secretKey = Cryptor.toBytes(key);
+		this.setSecretKey(Cryptor.toBytes(key));
 		this.duration = Integer.parseInt(duration);
 		this.revocationMode = Integer.parseInt(revocationMode);
 		this.validationMode = Integer.parseInt(validationMode);
@@ -45,7 +49,7 @@ public class Configuration {
 		this.cuc = cuc;
 		this.duration = duration;
 		this.extend = (byte)extend;		
-		this.secretKey = Cryptor.toBytes(key);
+		this.setSecretKey(Cryptor.toBytes(key));
 		this.revocationMode = revocationMode;
 		this.validationMode = validationMode;
 	}
@@ -55,7 +59,7 @@ public class Configuration {
 	 */
 	public boolean enableTestMode() {
 		if(secretKey != null) return false;
-		secretKey = Cryptor.toBytes(TEST_KEY);
+		setSecretKey(Cryptor.toBytes(TEST_KEY));
 		this.cuc =true;
 		this.extend = 3;
 		this.duration = 3600;
@@ -86,6 +90,14 @@ public class Configuration {
 	
 	public void setSecretKey(byte[] secretKey) {
 		this.secretKey = secretKey;
+		this.engine = secretKey != null ? new CipherEngine(secretKey) : null;
+	}
+	
+	/**
+	 * The AES-GCM engine bound to the secret key
+	 */
+	public CipherEngine getEngine() {
+		return engine;
 	}
 	
 	public int getRevocationMode() {
@@ -137,11 +149,35 @@ public class Configuration {
 	}
 	
 	public byte[] encrypt(byte[] content) {
-		return Cryptor.encrypt(content, secretKey);
+		return engine.encrypt(content);
 	}
 	
 	public byte[] decrypt(byte[] content) {
-		return Cryptor.decrypt(content, secretKey);
+		return engine.decrypt(content);
+	}
+
+	/**
+	 * The length(in bytes) of the context hash in PSS mode.
+	 */
+	public int getHashLength() {
+		return hashLength;
+	}
+	
+	/**
+	 * @param hashLength 16 ~ 32 bytes. A truncated hash takes less storage.
+	 */
+	public void setHashLength(int hashLength) {
+		if(hashLength < 16 || hashLength > MicroState.HASH_LENGTH) {
+			throw new IllegalArgumentException("Unsupported hash length: " + hashLength);
+		}
+		this.hashLength = hashLength;
+	}
+	
+	/**
+	 * Computes the context hash of the SRT binary payload.
+	 */
+	public byte[] calcContextHash(byte[] content, int offset, int length) {
+		return MicroState.calcContextHash(content, offset, length, hashLength);
 	}
 
 	public byte getExtend() {
@@ -152,6 +188,16 @@ public class Configuration {
 		this.extend = extend;
 	}
 	
+	/**
+	 * The max lifetime(seconds, including the extension) of a token. 
+	 * A micro-state can be expired safely after it.<br>
+	 * A CUSTOMIZED token carries its own multiplier(at most 15).
+	 */
+	public int getLifetime() {
+		if(Extendable.to(extend) == Extendable.CUSTOMIZED) return duration * 15;
+		return duration * Math.max(1, (int)extend);
+	}
+	
 	public byte getRealExcetend(byte extend) {
 		if(this.extend == 14) return extend; //Customized
 		return this.extend; //0(Forbidden), 1 ~ 13, 15(Forever) 
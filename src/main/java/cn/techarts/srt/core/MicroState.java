@@ -16,14 +16,19 @@
 
 package cn.techarts.srt.core;
 
+import java.security.MessageDigest;
 import java.security.SecureRandom;
-import cn.techarts.srt.util.Cryptor;
-import org.bouncycastle.jcajce.provider.digest.Blake3.Blake3_256;
+
+import cn.techarts.srt.util.Blake3;
 
 public class MicroState {
 	private  String uid;
 	private long salt;
-	private String hash;
+	private byte[] hash;
+	private int timestamp; //Of the token, a lookup key only
+	
+	/**The length of a full(not truncated) context hash*/
+	public static final int HASH_LENGTH = Blake3.DIGEST_LENGTH;
 	
 	public MicroState() {}
 	
@@ -31,13 +36,13 @@ public class MicroState {
 		this.salt = salt;
 	}
 	
-	public MicroState(String uid, long salt, String hash) {
+	public MicroState(String uid, long salt, byte[] hash) {
 		this.uid = uid;
 		this.salt = salt;
 		this.hash = hash;
 	}
 	
-	public MicroState(byte[] uid, long salt, String hash) {
+	public MicroState(byte[] uid, long salt, byte[] hash) {
 		this.salt = salt;
 		this.hash = hash;
 		this.uid = new String(uid);
@@ -55,24 +60,43 @@ public class MicroState {
 	public void setSalt(long salt) {
 		this.salt = salt;
 	}
-	public String getHash() {
+	public byte[] getHash() {
 		return hash;
 	}
-	public void setHash(String hash) {
+	public void setHash(byte[] hash) {
 		this.hash = hash;
 	}
 	
-	public void setHash(byte[] payload) {
-		this.hash = calcContextHash(payload);
+	/**
+	 * The timestamp(seconds since 2020) of the token of a lookup key, 0 if unknown.
+	 * A store may route the lookup or prune the partitions with it.
+	 */
+	public int getTimestamp() {
+		return timestamp;
+	}
+	public void setTimestamp(int timestamp) {
+		this.timestamp = timestamp;
 	}
 	
 	/**HASH ALGORITHM: BLAKE3-256<br>
 	 * Computes the hash of SRT binary payload.
 	 */
-	public static String calcContextHash(byte[] content) {
-		var hasher = new Blake3_256();
-		hasher.update(content);
-		return Cryptor.toHex(hasher.digest(), false);
+	public static byte[] calcContextHash(byte[] content) {
+		return calcContextHash(content, 0, content.length);
+	}
+	
+	/**HASH ALGORITHM: BLAKE3-256<br>
+	 * Computes the hash of the SRT binary payload at [offset, offset + length).
+	 */
+	public static byte[] calcContextHash(byte[] content, int offset, int length) {
+		return Blake3.hash(content, offset, length, HASH_LENGTH);
+	}
+	
+	/**HASH ALGORITHM: BLAKE3(XOF)<br>
+	 * Computes the hash truncated to {@value hashLength} bytes(see {@link Configuration#getHashLength()}).
+	 */
+	public static byte[] calcContextHash(byte[] content, int offset, int length, int hashLength) {
+		return Blake3.hash(content, offset, length, hashLength);
 	}
 	
 	/**
@@ -84,18 +108,12 @@ public class MicroState {
 	}
 	
 	/**
-	 * Check the consistency of Context-Hash
-	 */
-	public boolean checkHash(byte[] payload) {
-		var target = calcContextHash(payload);
-		return this.getHash() == target;
-	}
-	
-	/**
-	 * Check the consistency of Context-Hash
+	 * Check the consistency of Context-Hash(fixed-width binary).<br>
+	 * The comparison is constant-time, so the timing leaks nothing about the stored hash.
 	 */
-	public boolean checkHash(String hash) {
-		return this.getHash() == hash;
+	public boolean checkHash(byte[] hash) {
+		if(this.hash == null || hash == null) return false;
+		return MessageDigest.isEqual(this.hash, hash);
 	}
 	
 	/**
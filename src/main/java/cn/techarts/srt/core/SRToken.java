@@ -31,7 +31,7 @@ public class SRToken extends SRTHeader{
 	private byte[] data;
 	
 	private long randomSalt;
-	private String contextHash;
+	private byte[] contextHash;
 	
 	private static final int VERSION = 0;
 	
@@ -73,21 +73,26 @@ public class SRToken extends SRTHeader{
 			System.arraycopy(content, idx, this.data, 0, content.length - idx);
 		}
 		if(RevocationMode.PSS.is(revocationMode)) {
-			this.contextHash = MicroState.calcContextHash(content);
+			this.contextHash = config.calcContextHash(content, 0, content.length);
 		}
 	}
 	
 	//Binary Encoding without encryption
 	public byte[] encode(Session session, Configuration config, byte extend, byte[] data) {
+		var result = new ByteBuf(lengthOf(session, config, data), false);
+		this.encode(session, config, extend, data, result);
+		return result.array(); //Exactly filled
+	}
+	
+	/**
+	 * Binary Encoding into the given buffer(e.g. {@link ByteBuf#local})
+	 * @return The length of the written payload
+	 */
+	public int encode(Session session, Configuration config, byte extend, byte[] data, ByteBuf result) {
 		var ipLength = session.getIPLength(config.getValidationMode());
 		var ipEnabled = session.getIPEnabled(ipLength);
 		var dataAssociated = (data != null && data.length > 0);
-		
-		var length = 15 + session.getUidLength() 
-						+ session.getUALength(config.getValidationMode()) 
-						+ ipLength + (dataAssociated ? data.length : 0);
-		
-		var result = new ByteBuf(length);
+		var start = result.current();
 		
 		var times = config.getRealExcetend(extend);
 		
@@ -112,7 +117,18 @@ public class SRToken extends SRTHeader{
 		if(dataAssociated) {
 			result.append(data);
 		}
-		return result.toBytes();
+		return result.current() - start;
+	}
+	
+	/**
+	 * The length of the binary payload without encryption
+	 */
+	public static int lengthOf(Session session, Configuration config, byte[] data) {
+		var dataAssociated = (data != null && data.length > 0);
+		return 15 + session.getUidLength() 
+				  + session.getUALength(config.getValidationMode()) 
+				  + session.getIPLength(config.getValidationMode()) 
+				  + (dataAssociated ? data.length : 0);
 	}
 
 	public int getVersion() {
@@ -216,7 +232,7 @@ public class SRToken extends SRTHeader{
 		return (extend * duration < period);
 	}
 	
-	public String getContextHash() {
+	public byte[] getContextHash() {
 		return this.contextHash;
 	}
 	
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.core;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import cn.techarts.srt.IPAddr;
+import cn.techarts.srt.RevocationMode;
+
+/**
+ * A flyweight over the decrypted SRT binary payload.<p>
+ *
+ * Claims are read at their offsets in the buffer on demand, nothing is copied.
+ * The view is reusable: call {@link #wrap} again for the next token.
+ * The layout is the same as {@link SRToken#encode}.
+ */
+public final class SRTokenView {
+	private byte[] buf;
+	private int offset;
+	private int length;
+
+	private static final int VERSION = 0;
+	private static final int TIMESTAMP = 2, SALT = 6, UID_LENGTH = 14, UID = 15;
+
+	private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+	public SRTokenView() {}
+
+	public SRTokenView(byte[] buf, int offset, int length) {
+		this.wrap(buf, offset, length);
+	}
+
+	public SRTokenView wrap(byte[] buf, int offset, int length) {
+		this.buf = buf;
+		this.offset = offset;
+		this.length = length;
+		return this;
+	}
+
+	public byte[] buffer() {
+		return buf;
+	}
+
+	public int offset() {
+		return offset;
+	}
+
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * The claims declared by the header fit in the payload.
+	 */
+	public boolean isWellFormed() {
+		if(length < UID) return false;
+		var uidLength = getUidLength();
+		if(uidLength < 0) return false;
+		var ipLength = getIpEnabled().getLength();
+		return ipOffset() + ipLength <= offset + length;
+	}
+
+	//---------------------------Header(See SRTHeader)-----------------------------
+
+	public int getVersion() {
+		return (buf[offset] & 0xFF) >>> 5;
+	}
+
+	public boolean isVersionSupported() {
+		return getVersion() == VERSION;
+	}
+
+	public int getExtend() {
+		return (buf[offset] >> 1) & 15;
+	}
+
+	public boolean isUaEnabled() {
+		return (buf[offset] & 1) > 0;
+	}
+
+	public IPAddr getIpEnabled() {
+		return IPAddr.to((buf[offset + 1] & 192) >> 6);
+	}
+
+	public boolean isDataAssociated() {
+		return (buf[offset + 1] & 32) > 0;
+	}
+
+	public RevocationMode getRevocationMode() {
+		return RevocationMode.to((buf[offset + 1] >> 3) & 3);
+	}
+
+	public boolean isCuc() {
+		return ((buf[offset + 1] >> 2) & 1) > 0;
+	}
+
+	//---------------------------Claims----------------------------------------
+
+	public int getTimestamp() {
+		return (int)INT.get(buf, offset + TIMESTAMP);
+	}
+
+	public long getLongSalt() {
+		return (long)LONG.get(buf, offset + SALT);
+	}
+
+	public int getUidLength() {
+		return buf[offset + UID_LENGTH];
+	}
+
+	/**
+	 * The only claim returned as a copy because it's used as a storage key.
+	 */
+	public byte[] getUid() {
+		var from = offset + UID;
+		return Arrays.copyOfRange(buf, from, from + getUidLength());
+	}
+
+	private int uaOffset() {
+		return offset + UID + getUidLength();
+	}
+
+	private int ipOffset() {
+		return uaOffset() + (isUaEnabled() ? 8 : 0);
+	}
+
+	public long getUa() {
+		return isUaEnabled() ? (long)LONG.get(buf, uaOffset()) : 0L;
+	}
+
+	public boolean checkUid(byte[] uid) {
+		if(uid == null) return false;
+		var from = offset + UID;
+		return Arrays.equals(buf, from, from + getUidLength(), uid, 0, uid.length);
+	}
+
+	public boolean checkIP(byte[] ip) {
+		var ipLength = getIpEnabled().getLength();
+		if(ipLength == 0) return true;
+		if(ip == null) return false;
+		var from = ipOffset();
+		return Arrays.equals(buf, from, from + ipLength, ip, 0, ip.length);
+	}
+
+	public boolean checkUA(long ua) {
+		if(!isUaEnabled()) return true;
+		return (long)LONG.get(buf, uaOffset()) == ua;
+	}
+
+	public boolean expired(int duration) {
+		var period = SRToken.seconds2020() - getTimestamp();
+		if(period <= duration) return false;
+		var extend = getExtend();
+		if(extend == 0) return true;
+		return (extend * duration < period);
+	}
+
+	/**
+	 * HASH ALGORITHM: BLAKE3 over the payload in place.
+	 */
+	public byte[] getContextHash(Configuration config) {
+		return config.calcContextHash(buf, offset, length);
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import cn.techarts.srt.AbstractSRTokenizer;
+import cn.techarts.srt.Result;
+import cn.techarts.srt.SRTokenizer;
+import cn.techarts.srt.core.Configuration;
+import cn.techarts.srt.core.MicroState;
+import cn.techarts.srt.core.SRTokenView;
+import cn.techarts.srt.core.Session;
+
+/**
+ * Puts a {@link RevocationGuard} in front of the store of a PSS or GWM tokenizer.
+ */
+public class GuardedTokenizer extends AbstractSRTokenizer {
+	private final SRTokenizer store;
+	private final RevocationGuard guard;
+	
+	public GuardedTokenizer(SRTokenizer store, RevocationGuard guard) {
+		this.store = store;
+		this.guard = guard;
+	}
+	
+	public RevocationGuard getGuard() {
+		return guard;
+	}
+	
+	public byte getExtend(Session session, Configuration config) {
+		return store.getExtend(session, config);
+	}
+	
+	@Override
+	public void setState(byte[] uid, long salt, byte[] hash) {
+		store.setState(uid, salt, hash);
+		if(uid != null) guard.cache(new MicroState(uid, salt, hash));
+	}
+
+	@Override
+	public MicroState getState(byte[] uid, long salt) {
+		var probe = guard.probe(salt);
+		if(probe == RevocationGuard.REVOKED) return null;
+		if(probe != null && probe != RevocationGuard.SAMPLE) return probe;
+		return guard.settle(probe, store.getState(uid, salt));
+	}
+
+	/**
+	 * The guard answers first, the misses are verified by the store itself(e.g. the 
+	 * server-side script, the replica routing and the partition pruning of the store).
+	 */
+	@Override
+	public Result verifyState(SRTokenView srtoken, Configuration config) {
+		if(!(store instanceof AbstractSRTokenizer)) return super.verifyState(srtoken, config);
+		var salt = srtoken.getLongSalt();
+		var probe = guard.probe(salt);
+		if(probe == RevocationGuard.REVOKED) return Result.ERR_STATE;
+		if(probe != null && probe != RevocationGuard.SAMPLE) return verifyState(srtoken, probe, config);
+		var result = ((AbstractSRTokenizer)store).verifyState(srtoken, config);
+		MicroState stored = null;
+		if(result == Result.OK) { //The state of the store is the one of the token
+			var hash = config.isPerSessionStateMode() ? srtoken.getContextHash(config) : null;
+			stored = new MicroState(srtoken.getUid(), salt, hash);
+		}else if(result != Result.ERR_STATE && probe == RevocationGuard.SAMPLE) {
+			stored = probe; //It exists: a false positive of the filter
+		}
+		guard.settle(probe, stored);
+		return result;
+	}
+
+	@Override
+	public CompletableFuture<MicroState> getStateAsync(byte[] uid, long salt) {
+		var probe = guard.probe(salt);
+		if(probe == RevocationGuard.REVOKED) return CompletableFuture.completedFuture(null);
+		if(probe != null && probe != RevocationGuard.SAMPLE) return CompletableFuture.completedFuture(probe);
+		return store.getStateAsync(uid, salt).thenApply(stored -> guard.settle(probe, stored));
+	}
+	
+	@Override
+	public CompletableFuture<Void> setStateAsync(byte[] uid, long salt, byte[] hash) {
+		if(uid != null) guard.cache(new MicroState(uid, salt, hash));
+		return store.setStateAsync(uid, salt, hash);
+	}
+
+	/**
+	 * Only the keys missed by the guard are passed to the store(in one go).
+	 */
+	@Override
+	public List<MicroState> getStates(List<MicroState> keys) {
+		if(keys == null || keys.isEmpty()) return List.of();
+		var result = new ArrayList<MicroState>(keys.size());
+		var misses = new ArrayList<MicroState>();
+		for(var key : keys) {
+			var probe = guard.probe(key.getSalt());
+			result.add(probe);
+			if(probe == null || probe == RevocationGuard.SAMPLE) misses.add(key);
+		}
+		var stored = misses.isEmpty() ? List.<MicroState>of() : store.getStates(misses);
+		for(int i = 0, j = 0; i < result.size(); i++) {
+			var probe = result.get(i);
+			if(probe == RevocationGuard.REVOKED) {
+				result.set(i, null);
+			}else if(probe == null || probe == RevocationGuard.SAMPLE) {
+				result.set(i, guard.settle(probe, stored.get(j++)));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The states of the user are fetched before the revocation to feed the guard.
+	 */
+	@Override
+	public void revocate(byte[] uid) {
+		var states = store.getStates(uid);
+		store.revocate(uid);
+		for(var state : states) guard.revoke(state.getSalt());
+	}
+
+	@Override
+	public void revocate(byte[] uid, long salt) {
+		store.revocate(uid, salt);
+		guard.revoke(salt);
+	}
+
+	@Override
+	public void setState(MicroState state) {
+		store.setState(state);
+		guard.cache(state);
+	}
+
+	@Override
+	public void setStates(List<MicroState> states) {
+		store.setStates(states);
+		if(states == null) return;
+		for(var state : states) guard.cache(state);
+	}
+
+	@Override
+	public List<MicroState> getStates(byte[] uid) {
+		return store.getStates(uid);
+	}
+}
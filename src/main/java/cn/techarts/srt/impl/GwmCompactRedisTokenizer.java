@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import cn.techarts.srt.util.AsyncCacher;
+import cn.techarts.srt.util.Cacher;
+import cn.techarts.srt.util.Converter;
+import cn.techarts.srt.util.SaltSet;
+
+/**
+ * The same whitelist as {@link GwmRedisBasedTokenizer} but binary: 8-byte salt -> empty value.<p>
+ * Please see {@link cn.techarts.srt.util.RedisStateMigrator} to convert the existing salts.
+ */
+public class GwmCompactRedisTokenizer extends GwmRedisBasedTokenizer {
+	private static final byte[] PRESENT = new byte[0];
+
+	public GwmCompactRedisTokenizer() {
+		this(null, 0);
+	}
+
+	public GwmCompactRedisTokenizer(SaltSet nearCache, int ttl) {
+		super(nearCache, ttl);
+	}
+
+	@Override
+	protected void save(long salt) {
+		Cacher.saveBytes(1, Converter.toBytes(salt), PRESENT, ttl);
+	}
+
+	@Override
+	protected boolean contains(long salt) {
+		return Cacher.getBytes(1, Converter.toBytes(salt)) != null;
+	}
+
+	@Override
+	protected void remove(long salt) {
+		Cacher.remove(1, Converter.toBytes(salt));
+	}
+
+	@Override
+	protected CompletableFuture<?> saveAsync(long salt) {
+		return AsyncCacher.saveBytes(1, Converter.toBytes(salt), PRESENT, ttl);
+	}
+
+	@Override
+	protected CompletableFuture<Boolean> containsAsync(long salt) {
+		return AsyncCacher.getBytes(1, Converter.toBytes(salt)).thenApply(value -> value != null);
+	}
+
+	@Override
+	protected void saveAll(List<Long> salts) {
+		var keys = new ArrayList<byte[]>(salts.size());
+		var values = new ArrayList<byte[]>(salts.size());
+		for(var salt : salts) {
+			keys.add(Converter.toBytes(salt));
+			values.add(PRESENT);
+		}
+		Cacher.saveBytes(1, keys, values, ttl);
+	}
+
+	@Override
+	protected boolean[] containsAll(List<Long> salts) {
+		var keys = new ArrayList<byte[]>(salts.size());
+		for(var salt : salts) keys.add(Converter.toBytes(salt));
+		var values = Cacher.getBytes(1, keys);
+		var result = new boolean[salts.size()];
+		for(int i = 0; i < result.length; i++) {
+			result[i] = i < values.size() && values.get(i) != null;
+		}
+		return result;
+	}
+}
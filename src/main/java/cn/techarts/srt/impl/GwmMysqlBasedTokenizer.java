@@ -16,23 +16,130 @@
 
 package cn.techarts.srt.impl;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 
 import cn.techarts.srt.AbstractSRTokenizer;
+import cn.techarts.srt.Result;
 import cn.techarts.srt.core.Configuration;
 import cn.techarts.srt.core.MicroState;
+import cn.techarts.srt.core.SRToken;
+import cn.techarts.srt.core.SRTokenView;
 import cn.techarts.srt.core.Session;
 import cn.techarts.srt.util.Persister;
+import cn.techarts.srt.util.StatePartitions;
+import cn.techarts.srt.util.StateSweeper;
 
 public class GwmMysqlBasedTokenizer extends AbstractSRTokenizer {
 	private Persister persister;
+	private final int ttl;
+	private final WriteBehind buffer;
+	private final boolean partitioned;
 	
-	private static final String SET_STATE = "insert into srt_token_state (salt) values(?)";
+	private static final String SET_STATE = "insert into srt_token_state (salt, expiry) values(?,?)";
+	private static final String SET_PARTITIONED_STATE = "insert into srt_token_state (salt, expiry, issued) values(?,?,?)";
 	private static final String GET_STATE = "select salt from srt_token_state where salt=?";
+	private static final String ISSUED_BETWEEN = " and issued between ? and ?";
+	private static final String GET_PARTITIONED_STATE = GET_STATE + ISSUED_BETWEEN;
+	private static final String GET_STATES_BY_SALTS = "select salt from srt_token_state where salt in ";
 	private static final String REVOCATE = "delete from srt_token_state where salt=?";
 		
 	public GwmMysqlBasedTokenizer(Persister persister) {
+		this(persister, 0);
+	}
+	
+	/**
+	 * @param ttl The rows expire after the TTL(seconds) and are deleted by 
+	 * {@link StateSweeper}, 0 means never. Please see {@link Configuration#getLifetime()}.
+	 */
+	public GwmMysqlBasedTokenizer(Persister persister, int ttl) {
+		this(persister, ttl, null);
+	}
+	
+	/**
+	 * @param buffer The INSERTs are buffered and flushed in batches if it's not null.
+	 * Please see {@link #newWriteBehind(Persister, int, int)}.
+	 */
+	public GwmMysqlBasedTokenizer(Persister persister, int ttl, WriteBehind buffer) {
+		this(persister, ttl, buffer, false);
+	}
+	
+	/**
+	 * @param partitioned The table is partitioned by the column issued(schema-partitioned.sql), 
+	 * and the verification prunes the partitions with the timestamp of the token.
+	 * Please see {@link StatePartitions}.
+	 */
+	public GwmMysqlBasedTokenizer(Persister persister, int ttl, WriteBehind buffer, boolean partitioned) {
+		this.ttl = ttl;
+		this.buffer = buffer;
 		this.persister = persister;
+		this.partitioned = partitioned;
+	}
+	
+	/**
+	 * @param window The max milliseconds(the durability window) a salt stays in memory
+	 * @param batch The max rows of a batch INSERT
+	 */
+	public static WriteBehind newWriteBehind(Persister persister, int window, int batch) {
+		return newWriteBehind(persister, window, batch, false);
+	}
+	
+	public static WriteBehind newWriteBehind(Persister persister, int window, int batch, boolean partitioned) {
+		return newWriteBehind(persister, window, batch, WriteBehind.DEFAULT_CAPACITY, partitioned);
+	}
+	
+	/**
+	 * @param capacity The max pending states, the states beyond it are inserted synchronously
+	 */
+	public static WriteBehind newWriteBehind(Persister persister, int window, int batch, int capacity, boolean partitioned) {
+		return new WriteBehind(persister, toInsert(partitioned), window, batch, capacity);
+	}
+	
+	/**
+	 * The expiry(epoch seconds) of the rows inserted now, 0 means never.
+	 */
+	private long expiry() {
+		return ttl <= 0 ? 0 : System.currentTimeMillis() / 1000 + ttl;
+	}
+	
+	/**
+	 * The INSERT of the rows built by {@link #toRow(MicroState, long)}
+	 */
+	private static String toInsert(boolean partitioned) {
+		return partitioned ? SET_PARTITIONED_STATE : SET_STATE;
+	}
+	
+	/**
+	 * The parameters of the INSERT, issued is the time of now(about the timestamp of the token)
+	 */
+	private Object[] toRow(MicroState state, long expiry) {
+		if(!partitioned) return new Object[] {state.getSalt(), expiry};
+		return new Object[] {state.getSalt(), expiry, SRToken.seconds2020()};
+	}
+	
+	/**
+	 * The row of salt
+	 */
+	private static MicroState toState(ResultSet row) throws SQLException {
+		return new MicroState(row.getLong(1));
+	}
+	
+	/**
+	 * The salt was revoked by this instance within the window
+	 */
+	private boolean revoked(SRTokenView srtoken) {
+		return persister.isDeleted(srtoken.getLongSalt());
+	}
+	
+	private boolean revoked(List<MicroState> keys) {
+		if(!persister.hasDeletions()) return false;
+		for(var key : keys) {
+			if(persister.isDeleted(key.getSalt())) return true;
+		}
+		return false;
 	}
 	
 	public byte getExtend(Session session, Configuration config) {
@@ -40,17 +147,44 @@ public class GwmMysqlBasedTokenizer extends AbstractSRTokenizer {
 	}
 	
 	@Override
-	public void setState(byte[] uid, long salt, String hash) {
+	public void setState(byte[] uid, long salt, byte[] hash) {
 		if(salt == 0) return;
-		persister.update(SET_STATE, salt);
+		setState(new MicroState(salt));
 	}
 
 	/**@param uid Please ignore it.
 	 * @param salt The primary key.
+	 * It always reads the primary, the verification reads a replica(see {@link Persister}).
 	 * */
 	@Override
 	public MicroState getState(byte[] uid, long salt) {
-		return persister.get(GET_STATE, MicroState.class, salt);
+		var result = buffer != null ? buffer.get(salt) : null;
+		if(result != null) return result; //Not flushed yet
+		return persister.get(GET_STATE, GwmMysqlBasedTokenizer::toState, salt);
+	}
+
+	/**
+	 * The age of the token decides whether a replica is read. A salt missed 
+	 * there(e.g. not replicated yet) is looked up on the primary again, a salt
+	 * revoked within the window(a replica may still have it) is read from the primary.
+	 * The timestamp of the token prunes the partitions if the table is partitioned.
+	 */
+	@Override
+	public Result verifyState(SRTokenView srtoken, Configuration config) {
+		var salt = srtoken.getLongSalt();
+		var result = buffer != null ? buffer.get(salt) : null;
+		if(result == null) {
+			var timestamp = srtoken.getTimestamp();
+			var age = revoked(srtoken) ? 0 : SRToken.seconds2020() - timestamp;
+			var sql = partitioned ? GET_PARTITIONED_STATE : GET_STATE;
+			var params = !partitioned ? new Object[] {salt} : new Object[] 
+						 {salt, timestamp - StatePartitions.SKEW, timestamp + StatePartitions.SKEW};
+			result = persister.lookup(age, sql, GwmMysqlBasedTokenizer::toState, params);
+			if(result == null && persister.hasReplicas() && age >= persister.getWindow()) {
+				result = persister.get(sql, GwmMysqlBasedTokenizer::toState, params);
+			}
+		}
+		return verifyState(srtoken, result, config);
 	}
 
 	@Override
@@ -60,13 +194,101 @@ public class GwmMysqlBasedTokenizer extends AbstractSRTokenizer {
 
 	@Override
 	public void revocate(byte[] uid, long salt) {
+		if(buffer != null) buffer.remove(salt);
+		persister.deleted(salt); //BEFORE the DELETE
 		persister.update(REVOCATE, salt);
 	}
 
 	@Override
 	public void setState(MicroState state) {
 		if(state.getSalt() == 0) return;
-		persister.update(SET_STATE, state.getSalt());
+		var row = toRow(state, expiry());
+		if(buffer != null && buffer.add(state, row)) return;
+		persister.update(toInsert(partitioned), row); //Unbuffered or the buffer is full
+	}
+
+	/**
+	 * All rows are inserted in one JDBC batch(or buffered in the write-behind mode).
+	 */
+	@Override
+	public void setStates(List<MicroState> states) {
+		if(states == null || states.isEmpty()) return;
+		var expiry = expiry();
+		var params = new ArrayList<Object[]>(states.size());
+		for(var state : states) {
+			if(state == null || state.getSalt() == 0) continue;
+			var row = toRow(state, expiry);
+			if(buffer != null && buffer.add(state, row)) continue;
+			params.add(row); //Unbuffered or the buffer is full
+		}
+		if(params.isEmpty()) return;
+		persister.update(toInsert(partitioned), params.toArray(new Object[0][]));
+	}
+
+	/**
+	 * All rows are fetched via ONE query: WHERE salt IN (...). Like {@link #verifyState(SRTokenView, Configuration)} 
+	 * the youngest token decides whether a replica is read(the salts missed there are fetched 
+	 * from the primary), and the token timestamps prune the partitions if the table is partitioned.
+	 * The primary is read at once if any salt was revoked within the window.
+	 */
+	@Override
+	public List<MicroState> getStates(List<MicroState> keys) {
+		if(keys == null || keys.isEmpty()) return List.of();
+		var states = new HashMap<Long, MicroState>();
+		if(buffer != null) { //BEFORE the rows: a salt flushed in between is not missed
+			for(var key : keys) {
+				var state = buffer.get(key.getSalt());
+				if(state != null) states.put(key.getSalt(), state);
+			}
+		}
+		var salts = new ArrayList<Object>(keys.size());
+		for(var key : keys) {
+			if(!states.containsKey(key.getSalt())) salts.add(key.getSalt());
+		}
+		if(salts.isEmpty()) return toStates(keys, states);
+		var age = revoked(keys) ? 0 : age(keys);
+		var range = partitioned ? StatePartitions.range(keys) : null;
+		getStates(salts, states, range, age);
+		if(persister.hasReplicas() && age >= persister.getWindow()) { //A replica was read
+			salts.removeIf(states::containsKey);
+			if(!salts.isEmpty()) getStates(salts, states, range, -1);
+		}
+		return toStates(keys, states);
+	}
+	
+	private static List<MicroState> toStates(List<MicroState> keys, HashMap<Long, MicroState> states) {
+		var result = new ArrayList<MicroState>(keys.size());
+		for(var key : keys) result.add(states.get(key.getSalt()));
+		return result;
+	}
+	
+	/**
+	 * @param range The range of the column issued, null if unknown or not partitioned
+	 * @param age The age of the youngest token, -1 reads the primary
+	 */
+	private void getStates(List<Object> salts, HashMap<Long, MicroState> states, int[] range, int age) {
+		var params = new ArrayList<Object>(salts);
+		var sql = GET_STATES_BY_SALTS + Persister.placeholders(salts.size());
+		if(range != null) {
+			sql += ISSUED_BETWEEN;
+			params.add(range[0]);
+			params.add(range[1]);
+		}
+		var rows = age < 0 ? persister.getAll(sql, GwmMysqlBasedTokenizer::toState, params.toArray())
+						   : persister.lookupAll(age, sql, GwmMysqlBasedTokenizer::toState, params.toArray());
+		if(rows != null) rows.forEach(row -> states.putIfAbsent(row.getSalt(), row));
+	}
+	
+	/**
+	 * The age of the youngest token of the keys, Integer.MAX_VALUE if unknown
+	 */
+	private static int age(List<MicroState> keys) {
+		int youngest = 0;
+		for(var key : keys) {
+			if(key.getTimestamp() <= 0) return Integer.MAX_VALUE;
+			youngest = Math.max(youngest, key.getTimestamp());
+		}
+		return SRToken.seconds2020() - youngest;
 	}
 
 	@Override
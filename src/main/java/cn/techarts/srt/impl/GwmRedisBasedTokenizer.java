@@ -16,31 +16,161 @@
 
 package cn.techarts.srt.impl;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import cn.techarts.srt.AbstractSRTokenizer;
 import cn.techarts.srt.core.Configuration;
 import cn.techarts.srt.core.MicroState;
 import cn.techarts.srt.core.Session;
+import cn.techarts.srt.util.AsyncCacher;
 import cn.techarts.srt.util.Cacher;
+import cn.techarts.srt.util.SaltSet;
+import redis.clients.jedis.JedisPubSub;
 
+/**
+ * Every salt is a key, so in REDIS Cluster the whitelist is sharded by salt
+ * and the batches are routed per slot by {@link Cacher}.
+ */
 public class GwmRedisBasedTokenizer extends AbstractSRTokenizer {
+	protected final int ttl;
+	protected final SaltSet nearCache;
+	
+	/**
+	 * Revoked salts are broadcast on the channel to invalidate near-caches of all nodes.
+	 */
+	public static final String CHANNEL = "srt.revocation";
+	
+	public GwmRedisBasedTokenizer() {
+		this(null, 0);
+	}
+	
+	public GwmRedisBasedTokenizer(SaltSet nearCache) {
+		this(nearCache, 0);
+	}
+	
+	/**
+	 * @param nearCache Answers most lookups without a network hop. 
+	 * Please see {@link #listen(SaltSet)} to receive revocations of other nodes.
+	 * @param ttl A salt expires after the TTL(seconds), 0 means never.
+	 * Please see {@link Configuration#getLifetime()}.
+	 */
+	public GwmRedisBasedTokenizer(SaltSet nearCache, int ttl) {
+		this.ttl = ttl;
+		this.nearCache = nearCache;
+	}
+	
+	/**
+	 * Subscribes the revocation channel on a daemon thread and 
+	 * invalidates the revoked salts in the given near-cache.
+	 */
+	public static JedisPubSub listen(SaltSet nearCache) {
+		var result = new JedisPubSub() {
+			@Override
+			public void onMessage(String channel, String message) {
+				try {
+					nearCache.invalidate(Long.parseLong(message.trim()));
+				}catch(NumberFormatException e) {
+					nearCache.clear(); //Unknown message, be safe
+				}
+			}
+		};
+		var subscriber = new Thread(() -> Cacher.subscribe(CHANNEL, result), CHANNEL);
+		subscriber.setDaemon(true);
+		subscriber.start();
+		return result;
+	}
 	
 	public byte getExtend(Session session, Configuration config) {
 		return config.getExtend();
 	}
 	
+	//---------The whitelist in REDIS: salt -> "0"-----------------------------------/
+	
+	protected void save(long salt) {
+		Cacher.saveString(1, salt + "", "0", ttl);
+	}
+	
+	protected boolean contains(long salt) {
+		return Cacher.getString(1, salt + "") != null;
+	}
+	
+	protected void remove(long salt) {
+		Cacher.removeString(1, salt + "");
+	}
+	
+	protected CompletableFuture<?> saveAsync(long salt) {
+		return AsyncCacher.saveString(1, salt + "", "0", ttl);
+	}
+	
+	protected CompletableFuture<Boolean> containsAsync(long salt) {
+		return AsyncCacher.getString(1, salt + "").thenApply(value -> value != null);
+	}
+	
+	/**
+	 * All salts are saved in one pipeline.
+	 */
+	protected void saveAll(List<Long> salts) {
+		var values = new HashMap<String, String>();
+		for(var salt : salts) values.put(salt + "", "0");
+		Cacher.saveStrings(1, values, ttl);
+	}
+	
+	/**
+	 * All salts are fetched via ONE command MGET(one per slot in cluster mode).
+	 * @return Whether each salt exists(the same order)
+	 */
+	protected boolean[] containsAll(List<Long> salts) {
+		var keys = new ArrayList<String>(salts.size());
+		for(var salt : salts) keys.add(salt + "");
+		var values = Cacher.getStrings(1, keys);
+		var result = new boolean[salts.size()];
+		for(int i = 0; i < result.length; i++) {
+			result[i] = i < values.size() && values.get(i) != null;
+		}
+		return result;
+	}
+	
+	//---------The near-cache in front of the whitelist------------------------------/
+	
 	@Override
-	public void setState(byte[] uid, long salt, String hash) {
+	public void setState(byte[] uid, long salt, byte[] hash) {
 		if(salt == 0) return;
-		Cacher.saveString(1, salt + "", "0", 0);
+		save(salt);
+		if(nearCache != null) nearCache.put(salt);
 	}
 
 	@Override
 	public MicroState getState(byte[] uid, long salt) {
-		var key = Cacher.getString(1, salt + "");
-		if(key == null || key.isEmpty()) return null;
-		return new MicroState(Long.parseLong(key));
+		if(nearCache != null && nearCache.contains(salt)) {
+			return new MicroState(salt);
+		}
+		var stamp = nearCache != null ? nearCache.stamp(salt) : 0;
+		if(!contains(salt)) return null; //Revoked
+		if(nearCache != null) nearCache.put(salt, stamp);
+		return new MicroState(salt);
+	}
+
+	@Override
+	public CompletableFuture<MicroState> getStateAsync(byte[] uid, long salt) {
+		if(nearCache != null && nearCache.contains(salt)) {
+			return CompletableFuture.completedFuture(new MicroState(salt));
+		}
+		var stamp = nearCache != null ? nearCache.stamp(salt) : 0;
+		return containsAsync(salt).thenApply(exists -> {
+			if(!exists) return null; //Revoked
+			if(nearCache != null) nearCache.put(salt, stamp);
+			return new MicroState(salt);
+		});
+	}
+	
+	@Override
+	public CompletableFuture<Void> setStateAsync(byte[] uid, long salt, byte[] hash) {
+		if(salt == 0) return CompletableFuture.completedFuture(null);
+		if(nearCache != null) nearCache.put(salt);
+		return saveAsync(salt).thenApply(r -> null);
 	}
 
 	@Override
@@ -50,17 +180,61 @@ public class GwmRedisBasedTokenizer extends AbstractSRTokenizer {
 
 	@Override
 	public void revocate(byte[] uid, long salt) {
-		Cacher.removeString(1, salt + "");
+		remove(salt);
+		if(nearCache != null) nearCache.invalidate(salt);
+		Cacher.publish(CHANNEL, salt);
 	}
 
 	@Override
 	public void setState(MicroState state) {
-		if(state == null || state.getSalt() == 0) return;
-		Cacher.saveString(1, (state.getSalt() + ""), "0", 0);
+		if(state == null) return;
+		setState(null, state.getSalt(), null);
+	}
+
+	@Override
+	public void setStates(List<MicroState> states) {
+		if(states == null || states.isEmpty()) return;
+		var salts = new ArrayList<Long>(states.size());
+		for(var state : states) {
+			if(state == null || state.getSalt() == 0) continue;
+			salts.add(state.getSalt());
+		}
+		saveAll(salts);
+		if(nearCache == null) return;
+		for(var salt : salts) nearCache.put(salt);
+	}
+	
+	/**
+	 * Only the salts missed in the near-cache are fetched(in one go).
+	 */
+	@Override
+	public List<MicroState> getStates(List<MicroState> keys) {
+		if(keys == null || keys.isEmpty()) return List.of();
+		var result = new ArrayList<MicroState>(keys.size());
+		var misses = new ArrayList<Long>();
+		var stamps = new long[keys.size()];
+		for(int i = 0; i < keys.size(); i++) {
+			var salt = keys.get(i).getSalt();
+			var cached = nearCache != null && nearCache.contains(salt);
+			result.add(cached ? new MicroState(salt) : null);
+			if(cached) continue;
+			misses.add(salt);
+			if(nearCache != null) stamps[i] = nearCache.stamp(salt);
+		}
+		if(misses.isEmpty()) return result;
+		var exists = containsAll(misses);
+		for(int i = 0, j = 0; i < keys.size(); i++) {
+			if(result.get(i) != null) continue;
+			if(!exists[j++]) continue;
+			var salt = keys.get(i).getSalt();
+			if(nearCache != null) nearCache.put(salt, stamps[i]);
+			result.set(i, new MicroState(salt));
+		}
+		return result;
 	}
 
 	@Override
 	public List<MicroState> getStates(byte[] uid) {
 		return List.of();
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,459 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.impl;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import cn.techarts.srt.core.MicroState;
+
+/**
+ * A local PSS store: an append-only log of micro-states in ONE memory-mapped file.<p>
+ *
+ * Record: TYPE(1) + LENGTH(2) + PAYLOAD + CRC32(4)<br>
+ * PUT: SALT(8) + PREVIOUS PUT OF THE UID(4) + UID LENGTH(1) + UID + HASH LENGTH(1) + HASH<br>
+ * REVOKE: SALT(8), REVOKE ALL: UID LENGTH(1) + UID<p>
+ *
+ * The log is replayed on startup into an in-memory index(salt -> record offset),
+ * a torn tail(CRC mismatch) is discarded. A getState reads the record right from 
+ * the mapped pages. The log is compacted when the garbage exceeds the half.<br>
+ * Mapped pages survive a process crash. Set <b>sync</b> to survive a power loss as 
+ * well: every write is forced to the disk(much slower).
+ */
+public final class MappedStateFile implements AutoCloseable {
+	private final Path path;
+	private final boolean sync;
+	private FileChannel channel;
+	private MappedByteBuffer log;
+	private int position, garbage;
+	private final SaltIndex index = new SaltIndex();
+	private final Map<String, Integer> users = new HashMap<>(); //UID -> the latest PUT
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	
+	private static final int MAGIC = 0x53525431; //SRT1
+	private static final byte PUT = 1, REVOKE = 2, REVOKE_ALL = 3;
+	private static final int HEADER = 4, RECORD_HEADER = 3, CRC = 4, NONE = -1;
+	private static final int INITIAL_SIZE = 1 << 20, COMPACTION_THRESHOLD = 16 << 20;
+	private static final int MAX_RECORD = RECORD_HEADER + 8 + 4 + 1 + 255 + 1 + 255 + CRC;
+	
+	/**
+	 * Opens(or creates) the file and recovers the states from the log.
+	 */
+	public MappedStateFile(String path, boolean sync) {
+		this.sync = sync;
+		this.path = Paths.get(path);
+		try {
+			this.open(this.path);
+			this.recover();
+		}catch(IOException e) {
+			throw new RuntimeException("Failed to open the state file [" + path + "]", e);
+		}
+	}
+	
+	private void open(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, 
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		var size = Math.max(channel.size(), INITIAL_SIZE);
+		log = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+	}
+	
+	private void recover() {
+		var magic = log.getInt(0);
+		if(magic != MAGIC && magic != 0) {
+			throw new RuntimeException("Not a state file [" + path + "]");
+		}
+		log.putInt(0, MAGIC); //A new file is zero-filled
+		position = HEADER;
+		for(;;) {
+			var length = checkRecord(position);
+			if(length < 0) break;
+			replay(position);
+			position += length;
+		}
+		var end = Math.min(log.capacity(), position + MAX_RECORD);
+		for(int i = position; i < end; i++) log.put(i, (byte)0); //The torn tail
+	}
+	
+	//The total length of a valid record at the offset, or -1
+	private int checkRecord(int offset) {
+		if(offset + RECORD_HEADER + CRC > log.capacity()) return -1;
+		var type = log.get(offset);
+		if(type != PUT && type != REVOKE && type != REVOKE_ALL) return -1;
+		var length = RECORD_HEADER + (log.getShort(offset + 1) & 0xFFFF);
+		if(offset + length + CRC > log.capacity()) return -1;
+		if(log.getInt(offset + length) != crc(offset, length)) return -1;
+		return length + CRC;
+	}
+	
+	private int crc(int offset, int length) {
+		var crc = new CRC32();
+		crc.update(log.duplicate().position(offset).limit(offset + length));
+		return (int)crc.getValue();
+	}
+	
+	private void replay(int offset) {
+		var type = log.get(offset);
+		var payload = offset + RECORD_HEADER;
+		if(type == PUT) {
+			var salt = log.getLong(payload);
+			if(index.put(salt, offset) != NONE) garbage++;
+			users.put(readUid(payload + 12), offset);
+		}else if(type == REVOKE) {
+			if(index.remove(log.getLong(payload)) != NONE) garbage++;
+			garbage++;
+		}else {
+			for(var record : chainOf(readUid(payload))) {
+				index.remove(log.getLong(record + RECORD_HEADER));
+				garbage++;
+			}
+			users.remove(readUid(payload));
+			garbage++;
+		}
+	}
+	
+	private String readUid(int offset) {
+		var uid = new byte[log.get(offset) & 0xFF];
+		log.get(offset + 1, uid);
+		return new String(uid, StandardCharsets.UTF_8);
+	}
+	
+	//The live PUT records of the user, the latest first
+	private List<Integer> chainOf(String uid) {
+		var result = new ArrayList<Integer>();
+		var record = users.get(uid);
+		for(int offset = record != null ? record : NONE; offset != NONE;) {
+			var payload = offset + RECORD_HEADER;
+			if(index.get(log.getLong(payload)) == offset) result.add(offset);
+			offset = log.getInt(payload + 8);
+		}
+		return result;
+	}
+	
+	private MicroState readState(int offset) {
+		var payload = offset + RECORD_HEADER;
+		var salt = log.getLong(payload);
+		var uidLength = log.get(payload + 12) & 0xFF;
+		var uid = new byte[uidLength];
+		log.get(payload + 13, uid);
+		var hash = new byte[log.get(payload + 13 + uidLength) & 0xFF];
+		log.get(payload + 14 + uidLength, hash);
+		return new MicroState(new String(uid, StandardCharsets.UTF_8), salt, hash);
+	}
+	
+	//--------------------------------Writes-------------------------------------
+	
+	private void ensureCapacity(int length) throws IOException {
+		if(position + length <= log.capacity()) return;
+		long size = log.capacity();
+		while(size < position + length) size <<= 1;
+		if(size > Integer.MAX_VALUE) throw new IOException("The state file is too large.");
+		log.force();
+		log = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+	}
+	
+	private int append(byte type, byte[]... fields) throws IOException {
+		var length = 0;
+		for(var field : fields) length += field.length;
+		ensureCapacity(RECORD_HEADER + length + CRC);
+		var offset = position;
+		log.put(offset, type);
+		log.putShort(offset + 1, (short)length);
+		var at = offset + RECORD_HEADER;
+		for(var field : fields) {
+			log.put(at, field);
+			at += field.length;
+		}
+		log.putInt(at, crc(offset, RECORD_HEADER + length));
+		position = at + CRC;
+		return offset;
+	}
+	
+	private static byte[] longOf(long value) {
+		var result = new byte[8];
+		for(int i = 7; i >= 0; i--, value >>>= 8) result[i] = (byte)value;
+		return result;
+	}
+	
+	private static byte[] intOf(int value) {
+		return new byte[] {(byte)(value >>> 24), (byte)(value >>> 16), (byte)(value >>> 8), (byte)value};
+	}
+	
+	private static byte[] sized(byte[] value) {
+		if(value.length > 255) throw new IllegalArgumentException("Too long: " + value.length);
+		var result = new byte[value.length + 1];
+		result[0] = (byte)value.length;
+		System.arraycopy(value, 0, result, 1, value.length);
+		return result;
+	}
+	
+	private void appendState(String uid, long salt, byte[] hash) throws IOException {
+		var previous = users.getOrDefault(uid, NONE);
+		var bytes = uid.getBytes(StandardCharsets.UTF_8);
+		var offset = append(PUT, longOf(salt), intOf(previous), sized(bytes), sized(hash));
+		if(index.put(salt, offset) != NONE) garbage++;
+		users.put(uid, offset);
+	}
+	
+	public void put(String uid, long salt, byte[] hash) {
+		if(uid == null || salt == 0 || hash == null) return;
+		putAll(List.of(new MicroState(uid, salt, hash)));
+	}
+	
+	/**
+	 * All states are appended under ONE lock(and ONE force if sync is set).
+	 */
+	public void putAll(List<MicroState> states) {
+		write(() -> {
+			for(var state : states) {
+				if(state == null || state.getSalt() == 0) continue;
+				if(state.getUid() == null || state.getHash() == null) continue;
+				appendState(state.getUid(), state.getSalt(), state.getHash());
+			}
+		});
+	}
+	
+	public void remove(long salt) {
+		write(() -> {
+			if(index.get(salt) == NONE) return;
+			append(REVOKE, longOf(salt));
+			index.remove(salt);
+			garbage += 2;
+		});
+	}
+	
+	public void removeAll(String uid) {
+		write(() -> {
+			var records = chainOf(uid);
+			if(records.isEmpty()) return;
+			append(REVOKE_ALL, sized(uid.getBytes(StandardCharsets.UTF_8)));
+			for(var record : records) {
+				index.remove(log.getLong(record + RECORD_HEADER));
+			}
+			users.remove(uid);
+			garbage += records.size() + 1;
+		});
+	}
+	
+	private interface Writing {
+		void run() throws IOException;
+	}
+	
+	private void write(Writing writing) {
+		lock.writeLock().lock();
+		try {
+			writing.run();
+			if(sync) log.force();
+			if(position > COMPACTION_THRESHOLD && garbage > index.size()) compact();
+		}catch(IOException e) {
+			throw new RuntimeException("Failed to write the state file [" + path + "]", e);
+		}finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	//--------------------------------Reads--------------------------------------
+	
+	public MicroState get(long salt) {
+		lock.readLock().lock();
+		try {
+			var offset = index.get(salt);
+			return offset == NONE ? null : readState(offset);
+		}finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	public List<MicroState> getAll(String uid) {
+		lock.readLock().lock();
+		try {
+			var result = new ArrayList<MicroState>();
+			for(var record : chainOf(uid)) result.add(readState(record));
+			return result;
+		}finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return index.size();
+		}finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * The length of the log in bytes
+	 */
+	public int length() {
+		return position;
+	}
+	
+	//--------------------------------Lifecycle----------------------------------
+	
+	/**
+	 * Rewrites the live states into a new log and replaces the file atomically.
+	 */
+	public void compact() {
+		lock.writeLock().lock();
+		try {
+			var offsets = index.values();
+			Arrays.sort(offsets); //Keeps the order of the log
+			var states = new ArrayList<MicroState>(offsets.length);
+			for(var offset : offsets) states.add(readState(offset));
+			var target = path.resolveSibling(path.getFileName() + ".compact");
+			Files.deleteIfExists(target);
+			log.force();
+			channel.close();
+			open(target);
+			log.putInt(0, MAGIC);
+			position = HEADER;
+			garbage = 0;
+			index.clear();
+			users.clear();
+			for(var state : states) {
+				appendState(state.getUid(), state.getSalt(), state.getHash());
+			}
+			log.force();
+			channel.close();
+			Files.move(target, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			open(path);
+		}catch(IOException e) {
+			throw new RuntimeException("Failed to compact the state file [" + path + "]", e);
+		}finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	@Override
+	public void close() {
+		lock.writeLock().lock();
+		try {
+			log.force();
+			channel.close();
+		}catch(IOException e) {
+			throw new RuntimeException("Failed to close the state file [" + path + "]", e);
+		}finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Open-addressing(linear probing) map of salt -> offset in primitive arrays
+	 */
+	private static final class SaltIndex {
+		private int size;
+		private long[] salts = new long[1024];
+		private int[] offsets = new int[1024];
+		
+		private static int home(long salt, int mask) {
+			return (int)((salt * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+		}
+		
+		int size() {
+			return size;
+		}
+		
+		int get(long salt) {
+			var mask = salts.length - 1;
+			for(int i = home(salt, mask);; i = (i + 1) & mask) {
+				if(salts[i] == 0) return NONE;
+				if(salts[i] == salt) return offsets[i];
+			}
+		}
+		
+		/**
+		 * @return The former offset or NONE
+		 */
+		int put(long salt, int offset) {
+			if(size >= salts.length >> 1) grow();
+			var mask = salts.length - 1;
+			for(int i = home(salt, mask);; i = (i + 1) & mask) {
+				if(salts[i] == salt) {
+					var result = offsets[i];
+					offsets[i] = offset;
+					return result;
+				}
+				if(salts[i] != 0) continue;
+				salts[i] = salt;
+				offsets[i] = offset;
+				size++;
+				return NONE;
+			}
+		}
+		
+		int remove(long salt) {
+			var mask = salts.length - 1;
+			var i = home(salt, mask);
+			for(;; i = (i + 1) & mask) {
+				if(salts[i] == 0) return NONE;
+				if(salts[i] == salt) break;
+			}
+			var result = offsets[i];
+			for(int j = (i + 1) & mask; salts[j] != 0; j = (j + 1) & mask) {
+				var home = home(salts[j], mask);
+				if(((j - home) & mask) >= ((j - i) & mask)) {
+					salts[i] = salts[j];
+					offsets[i] = offsets[j];
+					i = j;
+				}
+			}
+			salts[i] = 0;
+			size--;
+			return result;
+		}
+		
+		int[] values() {
+			var result = new int[size];
+			for(int i = 0, j = 0; i < salts.length; i++) {
+				if(salts[i] != 0) result[j++] = offsets[i];
+			}
+			return result;
+		}
+		
+		void clear() {
+			size = 0;
+			Arrays.fill(salts, 0L);
+		}
+		
+		private void grow() {
+			var oldSalts = salts;
+			var oldOffsets = offsets;
+			salts = new long[oldSalts.length << 1];
+			offsets = new int[oldSalts.length << 1];
+			size = 0;
+			for(int i = 0; i < oldSalts.length; i++) {
+				if(oldSalts[i] != 0) put(oldSalts[i], oldOffsets[i]);
+			}
+		}
+	}
+}
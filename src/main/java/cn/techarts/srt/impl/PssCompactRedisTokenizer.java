@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import cn.techarts.srt.core.MicroState;
+import cn.techarts.srt.util.AsyncCacher;
+import cn.techarts.srt.util.Cacher;
+import cn.techarts.srt.util.Converter;
+
+/**
+ * The same layout as {@link PssRedisBasedTokenizer} but binary: uid -> {8-byte salt: raw hash}.<p>
+ * A field takes 8 bytes instead of up to 20 decimal digits and the value takes
+ * 16~32 bytes instead of 32~64 hex chars, and nothing is parsed or formatted per access.
+ * Please see {@link cn.techarts.srt.util.RedisStateMigrator} to convert the existing states.
+ */
+public class PssCompactRedisTokenizer extends PssRedisBasedTokenizer {
+
+	public PssCompactRedisTokenizer() {
+		this(false, 0);
+	}
+
+	public PssCompactRedisTokenizer(boolean scripted, int ttl) {
+		super(scripted, ttl);
+	}
+
+	private static byte[] binaryKey(byte[] uid) {
+		return Cacher.isCluster() ? key(uid).getBytes() : uid;
+	}
+
+	private static byte[] binaryKey(String uid) {
+		return key(uid).getBytes();
+	}
+
+	@Override
+	public void setState(byte[] uid, long salt, byte[] hash) {
+		if(uid == null || salt == 0 || hash == null) return;
+		if(scripted) {
+			super.setState(uid, salt, hash);
+		}else { //HSET and EXPIRE in one pipeline
+			var item = Map.of(Converter.toBytes(salt), hash);
+			Cacher.saveMapBytes(1, List.of(binaryKey(uid)), List.of(item), ttl);
+		}
+	}
+
+	@Override
+	protected Object evaluate(String script, byte[] uid, long salt, byte[] hash) {
+		var args = List.of(Converter.toBytes(salt), hash, (ttl + "").getBytes());
+		return Cacher.evaluateBytes(1, script, List.of(binaryKey(uid)), args);
+	}
+
+	@Override
+	public MicroState getState(byte[] uid, long salt) {
+		var hash = Cacher.getMapBytes(1, binaryKey(uid), Converter.toBytes(salt));
+		if(hash == null || hash.length == 0) return null; //Revoked
+		return new MicroState(uid, salt, hash);
+	}
+
+	@Override
+	public CompletableFuture<MicroState> getStateAsync(byte[] uid, long salt) {
+		var hash = AsyncCacher.getMapBytes(1, binaryKey(uid), Converter.toBytes(salt));
+		return hash.thenApply(h -> h == null || h.length == 0 ? null : new MicroState(uid, salt, h));
+	}
+
+	@Override
+	public CompletableFuture<Void> setStateAsync(byte[] uid, long salt, byte[] hash) {
+		if(scripted) return super.setStateAsync(uid, salt, hash);
+		if(uid == null || salt == 0 || hash == null) return CompletableFuture.completedFuture(null);
+		var result = AsyncCacher.setMapBytes(1, binaryKey(uid), Converter.toBytes(salt), hash, ttl);
+		return result.thenApply(r -> null);
+	}
+
+	@Override
+	public void revocate(byte[] uid) {
+		Cacher.remove(1, binaryKey(uid));
+	}
+
+	@Override
+	public void revocate(byte[] uid, long salt) {
+		Cacher.removeMapBytes(1, binaryKey(uid), Converter.toBytes(salt));
+	}
+
+	/**
+	 * All fields are saved in one pipeline, grouped by user.
+	 */
+	@Override
+	public void setStates(List<MicroState> states) {
+		if(states == null || states.isEmpty()) return;
+		var users = new HashMap<String, Map<byte[], byte[]>>();
+		for(var state : states) {
+			if(state == null || state.getSalt() == 0 || state.getHash() == null) continue;
+			var fields = users.computeIfAbsent(state.getUid(), k -> new HashMap<>());
+			fields.put(Converter.toBytes(state.getSalt()), state.getHash());
+		}
+		var keys = new ArrayList<byte[]>(users.size());
+		var items = new ArrayList<Map<byte[], byte[]>>(users.size());
+		for(var user : users.entrySet()) {
+			keys.add(binaryKey(user.getKey()));
+			items.add(user.getValue());
+		}
+		Cacher.saveMapBytes(1, keys, items, ttl);
+	}
+
+	/**
+	 * All fields are fetched in one pipeline(one per node in cluster mode).
+	 */
+	@Override
+	public List<MicroState> getStates(List<MicroState> keys) {
+		if(keys == null || keys.isEmpty()) return List.of();
+		var uids = new ArrayList<byte[]>(keys.size());
+		var salts = new ArrayList<byte[]>(keys.size());
+		for(var key : keys) {
+			uids.add(binaryKey(key.getUid()));
+			salts.add(Converter.toBytes(key.getSalt()));
+		}
+		var hashes = Cacher.getMapBytes(1, uids, salts);
+		var result = new ArrayList<MicroState>(keys.size());
+		for(int i = 0; i < keys.size(); i++) {
+			var hash = i < hashes.size() ? hashes.get(i) : null;
+			if(hash == null || hash.length == 0) {
+				result.add(null); //Revoked
+			}else {
+				var key = keys.get(i);
+				result.add(new MicroState(key.getUid(), key.getSalt(), hash));
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public List<MicroState> getStates(byte[] uid) {
+		var states = Cacher.getMapBytes(1, binaryKey(uid));
+		if(states.isEmpty()) return List.of();
+		var result = new ArrayList<MicroState>(states.size());
+		for(var state : states.entrySet()) {
+			var salt = Converter.toLong(state.getKey());
+			if(salt != 0) result.add(new MicroState(uid, salt, state.getValue()));
+		}
+		return result;
+	}
+}
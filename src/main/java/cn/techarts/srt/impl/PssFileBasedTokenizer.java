@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import cn.techarts.srt.AbstractSRTokenizer;
+import cn.techarts.srt.core.Configuration;
+import cn.techarts.srt.core.MicroState;
+import cn.techarts.srt.core.Session;
+
+/**
+ * The PSS on a local memory-mapped file, designed for single-box and edge deployments.
+ */
+public class PssFileBasedTokenizer extends AbstractSRTokenizer {
+	private final MappedStateFile file;
+	
+	public PssFileBasedTokenizer(MappedStateFile file) {
+		this.file = file;
+	}
+	
+	private static String toUid(byte[] uid) {
+		return new String(uid, StandardCharsets.UTF_8);
+	}
+	
+	public byte getExtend(Session session, Configuration config) {
+		return config.getExtend();
+	}
+	
+	@Override
+	public void setState(byte[] uid, long salt, byte[] hash) {
+		if(uid == null || salt == 0 || hash == null) return;
+		file.put(toUid(uid), salt, hash);
+	}
+
+	/**@param uid Please ignore it.
+	 * @param salt The primary key.
+	 * */
+	@Override
+	public MicroState getState(byte[] uid, long salt) {
+		return file.get(salt);
+	}
+
+	@Override
+	public void revocate(byte[] uid) {
+		file.removeAll(toUid(uid));
+	}
+
+	@Override
+	public void revocate(byte[] uid, long salt) {
+		file.remove(salt);
+	}
+
+	@Override
+	public void setState(MicroState state) {
+		if(state == null) return;
+		file.put(state.getUid(), state.getSalt(), state.getHash());
+	}
+
+	/**
+	 * All states are appended under ONE lock.
+	 */
+	@Override
+	public void setStates(List<MicroState> states) {
+		if(states == null || states.isEmpty()) return;
+		file.putAll(states);
+	}
+
+	@Override
+	public List<MicroState> getStates(byte[] uid) {
+		return file.getAll(toUid(uid));
+	}
+}
@@ -17,59 +17,217 @@
 package cn.techarts.srt.impl;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import cn.techarts.srt.AbstractSRTokenizer;
+import cn.techarts.srt.Result;
 import cn.techarts.srt.core.Configuration;
 import cn.techarts.srt.core.MicroState;
+import cn.techarts.srt.core.SRTokenView;
 import cn.techarts.srt.core.Session;
+import cn.techarts.srt.util.AsyncCacher;
 import cn.techarts.srt.util.Cacher;
+import cn.techarts.srt.util.Cryptor;
+import cn.techarts.srt.util.Empty;
 
+/**
+ * The states of a user are saved in ONE hash: uid -> {salt: hash}.<p>
+ * In REDIS Cluster the uid is wrapped as a hash-tag, so all keys of a user 
+ * (including the ones added in the future) stay in one slot.<p>
+ * In scripted mode the state is checked on the server: ONE round trip per verification,
+ * and a revocation can never interleave between the lookup and the TTL refresh.
+ */
 public class PssRedisBasedTokenizer extends AbstractSRTokenizer {
+	protected final int ttl;
+	protected final boolean scripted;
+	
+	/**
+	 * KEYS: uid, ARGV: salt, hash, ttl. Returns the code of {@link Result}.<br>
+	 * The hashes are compared without early exit.
+	 */
+	private static final String VERIFY = 
+			"local h = redis.call('HGET', KEYS[1], ARGV[1])\n" +
+			"if not h then return " + Result.ERR_STATE.getCode() + " end\n" +
+			"local d = (#h == #ARGV[2]) and 0 or 1\n" +
+			"for i = 1, math.min(#h, #ARGV[2]) do\n" +
+			"  if string.byte(h, i) ~= string.byte(ARGV[2], i) then d = 1 end\n" +
+			"end\n" +
+			"if d ~= 0 then return " + Result.ERR_HASH.getCode() + " end\n" +
+			"if tonumber(ARGV[3]) > 0 then redis.call('EXPIRE', KEYS[1], ARGV[3]) end\n" +
+			"return " + Result.OK.getCode();
+	
+	/**
+	 * KEYS: uid, ARGV: salt, hash, ttl. The new session and the TTL are saved together.
+	 */
+	private static final String ISSUE = 
+			"redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])\n" +
+			"if tonumber(ARGV[3]) > 0 then redis.call('EXPIRE', KEYS[1], ARGV[3]) end\n" +
+			"return 1";
+	
+	public PssRedisBasedTokenizer() {
+		this(false, 0);
+	}
+	
+	/**
+	 * @param scripted Issues and verifies via the server-side scripts
+	 * @param ttl The states of a user expire after the TTL(seconds) since the last
+	 * issue(or verification in scripted mode), 0 means never. 
+	 * Please see {@link Configuration#getLifetime()}.
+	 */
+	public PssRedisBasedTokenizer(boolean scripted, int ttl) {
+		this.ttl = ttl;
+		this.scripted = scripted;
+	}
+	
+	protected static String key(byte[] uid) {
+		return key(new String(uid));
+	}
+	
+	protected static String key(String uid) {
+		return key(uid, Cacher.isCluster());
+	}
+	
+	/**
+	 * In cluster mode the uid is wrapped as a hash tag: only the uid decides the slot
+	 */
+	static String key(String uid, boolean cluster) {
+		return cluster ? "{" + uid + "}" : uid;
+	}
 	
 	public byte getExtend(Session session, Configuration config) {
 		return config.getExtend();
 	}
 	
 	@Override
-	public void setState(byte[] uid, long salt, String hash) {
+	public void setState(byte[] uid, long salt, byte[] hash) {
 		if(uid == null || salt == 0 || hash == null) return;
-		Cacher.setMapItem(1, new String(uid), (salt + ""), hash);
+		if(!scripted) { //HSET and EXPIRE in one pipeline
+			var item = Map.of(salt + "", Cryptor.toHex(hash, false));
+			Cacher.saveMapItems(1, Map.of(key(uid), item), ttl);
+		}else {
+			evaluate(ISSUE, uid, salt, hash);
+		}
+	}
+	
+	/**
+	 * Runs the script with KEYS: uid, ARGV: salt, hash and TTL
+	 */
+	protected Object evaluate(String script, byte[] uid, long salt, byte[] hash) {
+		var args = List.of(salt + "", Cryptor.toHex(hash, false), ttl + "");
+		return Cacher.evaluate(1, script, List.of(key(uid)), args);
+	}
+	
+	/**
+	 * Checks the hash and refreshes the TTL on the server in scripted mode.
+	 */
+	@Override
+	public Result verifyState(SRTokenView srtoken, Configuration config) {
+		if(!scripted || !config.isPerSessionStateMode()) {
+			return super.verifyState(srtoken, config);
+		}
+		var hash = srtoken.getContextHash(config);
+		var code = evaluate(VERIFY, srtoken.getUid(), srtoken.getLongSalt(), hash);
+		if(!(code instanceof Long)) return Result.ERR_STATE;
+		var result = Result.of(((Long)code).intValue());
+		return result != null ? result : Result.ERR_STATE;
 	}
 
 	@Override
 	public MicroState getState(byte[] uid, long salt) {
 		var key = new String(uid);
-		var hash = Cacher.getMapItem(1, key, (salt + ""));
-		return new MicroState(key, salt, hash);
+		var hash = Cacher.getMapItem(1, key(key), (salt + ""));
+		if(hash == null || hash.isEmpty()) return null; //Revoked
+		return new MicroState(key, salt, Cryptor.toBytes(hash));
+	}
+
+	@Override
+	public CompletableFuture<MicroState> getStateAsync(byte[] uid, long salt) {
+		var key = new String(uid);
+		var hash = AsyncCacher.getMapItem(1, key(key), (salt + ""));
+		return hash.thenApply(h -> Empty.is(h) ? null : new MicroState(key, salt, Cryptor.toBytes(h)));
+	}
+	
+	/**
+	 * The script is not pipelined, so the scripted mode saves the state synchronously.
+	 */
+	@Override
+	public CompletableFuture<Void> setStateAsync(byte[] uid, long salt, byte[] hash) {
+		if(scripted) return super.setStateAsync(uid, salt, hash);
+		if(uid == null || salt == 0 || hash == null) return CompletableFuture.completedFuture(null);
+		var result = AsyncCacher.setMapItem(1, key(uid), (salt + ""), Cryptor.toHex(hash, false), ttl);
+		return result.thenApply(r -> null);
 	}
 
 	@Override
 	public void revocate(byte[] uid) {
-		Cacher.remove(1, new String(uid));
+		Cacher.remove(1, key(uid));
 	}
 
 	@Override
 	public void revocate(byte[] uid, long salt) {
-		Cacher.removeMapItem(1, new String(uid), salt + "");
+		Cacher.removeMapItem(1, key(uid), salt + "");
 	}
 
 	@Override
 	public void setState(MicroState state) {
-		if(state == null || state.getSalt() == 0 || state.getHash() == null) return;
-		Cacher.setMapItem(1, state.getUid(), state.getSalt() + "", state.getHash());
+		if(state == null || state.getUid() == null) return;
+		setState(state.getUid().getBytes(), state.getSalt(), state.getHash());
+	}
+
+	/**
+	 * All fields are saved in one pipeline, grouped by user.
+	 */
+	@Override
+	public void setStates(List<MicroState> states) {
+		if(states == null || states.isEmpty()) return;
+		var items = new HashMap<String, Map<String, String>>();
+		for(var state : states) {
+			if(state == null || state.getSalt() == 0 || state.getHash() == null) continue;
+			var fields = items.computeIfAbsent(key(state.getUid()), k -> new HashMap<>());
+			fields.put(state.getSalt() + "", Cryptor.toHex(state.getHash(), false));
+		}
+		Cacher.saveMapItems(1, items, ttl);
+	}
+
+	/**
+	 * All fields are fetched in one pipeline(one per node in cluster mode).
+	 */
+	@Override
+	public List<MicroState> getStates(List<MicroState> keys) {
+		if(keys == null || keys.isEmpty()) return List.of();
+		var uids = new ArrayList<String>(keys.size());
+		var salts = new ArrayList<String>(keys.size());
+		for(var key : keys) {
+			uids.add(key(key.getUid()));
+			salts.add(key.getSalt() + "");
+		}
+		var hashes = Cacher.getMapItems(1, uids, salts);
+		var result = new ArrayList<MicroState>(keys.size());
+		for(int i = 0; i < keys.size(); i++) {
+			var hash = i < hashes.size() ? hashes.get(i) : null;
+			if(hash == null || hash.isEmpty()) {
+				result.add(null); //Revoked
+			}else {
+				var key = keys.get(i);
+				result.add(new MicroState(key.getUid(), key.getSalt(), Cryptor.toBytes(hash)));
+			}
+		}
+		return result;
 	}
 
 	@Override
 	public List<MicroState> getStates(byte[] uid) {
 		var key = new String(uid);
-		var states = Cacher.getMap(1, key);
+		var states = Cacher.getMap(1, key(key));
 		if(states == null) return List.of();
 		if(states.isEmpty()) return List.of();
 		var result = new ArrayList<MicroState>();
 		for(var state : states.entrySet()) {
 			var salt = Long.parseLong(state.getKey());
-			result.add(new MicroState(key, salt, state.getValue()));
+			result.add(new MicroState(key, salt, Cryptor.toBytes(state.getValue())));
 		}
 		return result;
 	}
@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.impl;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import cn.techarts.srt.core.MicroState;
+import cn.techarts.srt.util.Cacher;
+import cn.techarts.srt.util.CuckooFilter;
+import redis.clients.jedis.JedisPubSub;
+
+/**
+ * The per-node guard in front of a PSS or GWM store(shared by all tokenizers of the node).<p>
+ *
+ * 1. A cuckoo filter of the recently revoked salts: a hit is rejected at once.<br>
+ * 2. A bounded positive cache of issued or verified states with a TTL.<br>
+ * Only a miss of both goes to the store. The filter has 2 generations, each
+ * lives a token lifetime, so a revoked salt is remembered until its token expired.
+ * One of {@value #SAMPLING} filter hits is confirmed by the store to measure 
+ * the real false-positive rate. Revocations of other nodes arrive via {@link #listen()}.<p>
+ * Without the broadcast(REDIS pub/sub) a salt revoked by another node stays in the
+ * positive cache until its TTL passed, so the cache must be disabled(ttl 0) then.
+ */
+public final class RevocationGuard {
+	private final int capacity;
+	private final long lifetime, ttl; //Nanoseconds
+	private volatile CuckooFilter current, previous;
+	private volatile long rotated;
+	private volatile boolean broadcasting;
+	private final int shift;
+	private final AtomicReferenceArray<Entry> positives;
+	
+	private final LongAdder lookups = new LongAdder();
+	private final LongAdder filterHits = new LongAdder();
+	private final LongAdder positiveHits = new LongAdder();
+	private final LongAdder storeLookups = new LongAdder();
+	private final LongAdder samples = new LongAdder();
+	private final LongAdder falsePositives = new LongAdder();
+	
+	public static final int SAMPLING = 64;
+	
+	/**A filter hit which is not sampled*/
+	static final MicroState REVOKED = new MicroState(0L);
+	
+	/**A filter hit which must be confirmed by the store*/
+	static final MicroState SAMPLE = new MicroState(0L);
+	
+	private static final class Entry {
+		final MicroState state;
+		final long deadline;
+		
+		Entry(MicroState state, long deadline){
+			this.state = state;
+			this.deadline = deadline;
+		}
+	}
+	
+	/**
+	 * @param capacity The revoked salts per lifetime
+	 * @param lifetime The max lifetime(including extension) of a token in seconds
+	 * @param positives The slots of the positive cache(rounded up to a power of 2)
+	 * @param ttl The time to live of a positive entry in seconds, 0 disables the positive cache
+	 */
+	public RevocationGuard(int capacity, int lifetime, int positives, int ttl) {
+		if(capacity <= 0 || lifetime <= 0 || positives <= 0 || ttl < 0) {
+			throw new IllegalArgumentException("Illegal capacity, lifetime or TTL.");
+		}
+		this.capacity = capacity;
+		this.current = new CuckooFilter(capacity);
+		this.previous = new CuckooFilter(capacity);
+		this.rotated = System.nanoTime();
+		this.lifetime = TimeUnit.SECONDS.toNanos(lifetime);
+		this.ttl = TimeUnit.SECONDS.toNanos(ttl);
+		var bits = 32 - Integer.numberOfLeadingZeros(Math.max(positives, 2) - 1);
+		this.shift = 64 - bits;
+		this.positives = ttl == 0 ? null : new AtomicReferenceArray<>(1 << bits);
+	}
+	
+	/**
+	 * Subscribes the revocation channel on a daemon thread. 
+	 * Revocations of this node are broadcast from then on.
+	 */
+	public JedisPubSub listen() {
+		var result = new JedisPubSub() {
+			@Override
+			public void onMessage(String channel, String message) {
+				try {
+					revoked(Long.parseLong(message.trim()));
+				}catch(NumberFormatException e) {
+					return; //Unknown message
+				}
+			}
+		};
+		var channel = GwmRedisBasedTokenizer.CHANNEL;
+		var subscriber = new Thread(() -> Cacher.subscribe(channel, result), channel + ".guard");
+		subscriber.setDaemon(true);
+		subscriber.start();
+		this.broadcasting = true;
+		return result;
+	}
+	
+	/**
+	 * Records a revocation of this node(and broadcasts it if listening).
+	 */
+	public void revoke(long salt) {
+		revoked(salt);
+		if(broadcasting) Cacher.publish(GwmRedisBasedTokenizer.CHANNEL, salt);
+	}
+	
+	/**
+	 * Records a revocation(idempotent).
+	 */
+	public void revoked(long salt) {
+		if(salt == 0) return;
+		invalidate(salt);
+		rotateIfDue();
+		if(isRevoked(salt)) return;
+		if(!current.add(salt)) {
+			rotate(); //Full before the lifetime passed
+			current.add(salt);
+		}
+	}
+	
+	public boolean isRevoked(long salt) {
+		return current.mightContain(salt) || previous.mightContain(salt);
+	}
+	
+	private void rotateIfDue() {
+		if(System.nanoTime() - rotated < lifetime) return;
+		synchronized(this) {
+			if(System.nanoTime() - rotated >= lifetime) rotate();
+		}
+	}
+	
+	private synchronized void rotate() {
+		previous = current;
+		current = new CuckooFilter(capacity);
+		rotated = System.nanoTime();
+	}
+	
+	//---------------------------Positive Cache---------------------------------
+	
+	private int index(long salt) {
+		return (int)((salt * 0x9E3779B97F4A7C15L) >>> shift);
+	}
+	
+	public void cache(MicroState state) {
+		if(positives == null) return; //Disabled
+		if(state == null || state.getSalt() == 0) return;
+		var entry = new Entry(state, System.nanoTime() + ttl);
+		positives.set(index(state.getSalt()), entry);
+	}
+	
+	public MicroState cached(long salt) {
+		if(positives == null) return null;
+		var entry = positives.get(index(salt));
+		if(entry == null || entry.state.getSalt() != salt) return null;
+		return entry.deadline - System.nanoTime() > 0 ? entry.state : null;
+	}
+	
+	private void invalidate(long salt) {
+		if(positives == null) return;
+		var i = index(salt);
+		var entry = positives.get(i);
+		if(entry == null || entry.state.getSalt() != salt) return;
+		positives.compareAndSet(i, entry, null);
+	}
+	
+	//---------------------------Lookups----------------------------------------
+	
+	/**
+	 * @return {@link #REVOKED}, {@link #SAMPLE}, a cached state or null(ask the store)
+	 */
+	MicroState probe(long salt) {
+		lookups.increment();
+		if(isRevoked(salt)) {
+			filterHits.increment();
+			if(ThreadLocalRandom.current().nextInt(SAMPLING) != 0) return REVOKED;
+			return SAMPLE;
+		}
+		var result = cached(salt);
+		if(result != null) positiveHits.increment();
+		return result;
+	}
+	
+	/**
+	 * Settles a lookup which the store has answered.
+	 */
+	MicroState settle(MicroState probe, MicroState stored) {
+		storeLookups.increment();
+		if(probe == SAMPLE) {
+			samples.increment();
+			if(stored != null) falsePositives.increment();
+			return stored;
+		}
+		cache(stored);
+		return stored;
+	}
+	
+	//---------------------------Metrics----------------------------------------
+	
+	public long getLookups() {
+		return lookups.sum();
+	}
+	
+	public long getFilterHits() {
+		return filterHits.sum();
+	}
+	
+	public long getPositiveHits() {
+		return positiveHits.sum();
+	}
+	
+	public long getStoreLookups() {
+		return storeLookups.sum();
+	}
+	
+	/**
+	 * The sampled filter hits and the false ones of them
+	 */
+	public long getSamples() {
+		return samples.sum();
+	}
+	
+	public long getFalsePositives() {
+		return falsePositives.sum();
+	}
+	
+	/**
+	 * The observed false-positive rate: the sampled false positives scaled 
+	 * by {@value #SAMPLING} over all lookups.
+	 */
+	public double getFalsePositiveRate() {
+		var total = lookups.sum();
+		return total == 0 ? 0d : (double)falsePositives.sum() * SAMPLING / total;
+	}
+	
+	/**
+	 * The theoretical false-positive rate of both generations
+	 */
+	public double getExpectedFpp() {
+		return current.expectedFpp() + previous.expectedFpp();
+	}
+	
+	public int getRevoked() {
+		return current.size() + previous.size();
+	}
+	
+	/**
+	 * The memory in bytes: both filters and the slots(references) of the positive cache
+	 */
+	public long getMemory() {
+		var slots = positives != null ? positives.length() : 0;
+		return current.memory() + previous.memory() + slots * 8L;
+	}
+}
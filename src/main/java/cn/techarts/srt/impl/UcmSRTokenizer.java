@@ -31,7 +31,7 @@ public class UcmSRTokenizer extends AbstractSRTokenizer {
 	}
 	
 	@Override
-	public void setState(byte[] uid, long salt, String hash) {
+	public void setState(byte[] uid, long salt, byte[] hash) {
 		return;
 	}
 
@@ -58,6 +58,11 @@ public class UcmSRTokenizer extends AbstractSRTokenizer {
 		return;
 	}
 
+	@Override
+	public void setStates(List<MicroState> states) {
+		return;
+	}
+
 	@Override
 	public List<MicroState> getStates(byte[] uid) {
 		return List.of();
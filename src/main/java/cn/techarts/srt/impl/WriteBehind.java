@@ -0,0 +1,369 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.impl;
+
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import cn.techarts.srt.core.MicroState;
+import cn.techarts.srt.util.Persister;
+
+/**
+ * Buffers the INSERTs of a MYSQL tokenizer(shared by all tokenizers of the node).<p>
+ *
+ * The rows are flushed as ONE batch when the batch size is reached or the window
+ * elapsed, whichever comes first. Until then the states are answered from the
+ * pending set, so a token can be verified on this node before its row lands.
+ * The states issued within the window are lost if the node crashes: the window
+ * is the durability window, {@link #getPendingAge()} reports the real one.<p>
+ * A revocation removes the pending state under the flush lock, so a revoked
+ * state is never inserted after its DELETE.<p>
+ * A failed batch is retried in the next round, for as long as the database fails.
+ * If it hits a constraint, its rows are inserted one by one and only the offending
+ * rows are dropped({@link #getDropped()}). The pending states are bounded by the
+ * capacity: beyond it {@link #add(MicroState, Object[])} refuses the state and the
+ * tokenizer inserts it synchronously, so the caller sees the failure of the database.
+ */
+public final class WriteBehind implements WriteBehindMBean {
+	private final String sql;
+	private final int batch;
+	private final int capacity;
+	private final long window; //Milliseconds
+	private final Persister persister;
+	private final Object signal = new Object();
+	private final AtomicInteger size = new AtomicInteger();
+	private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+	private final ConcurrentLinkedQueue<Pending> queue = new ConcurrentLinkedQueue<>();
+	private volatile boolean closed;
+	private Thread flusher = null;
+
+	private final LongAdder flushed = new LongAdder();
+	private final LongAdder batches = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder overflows = new LongAdder();
+	
+	static final int DEFAULT_CAPACITY = 100000;
+
+	private static final class Pending {
+		final MicroState state;
+		final Object[] row;
+		final long since; //Nanoseconds
+
+		Pending(MicroState state, Object[] row){
+			this.row = row;
+			this.state = state;
+			this.since = System.nanoTime();
+		}
+	}
+
+	/**
+	 * @param sql The INSERT statement of a row
+	 * @param window The max milliseconds a row stays in memory
+	 * @param batch The max rows of a batch
+	 * @param capacity The max pending states
+	 */
+	WriteBehind(Persister persister, String sql, int window, int batch, int capacity) {
+		if(window <= 0 || batch <= 0 || capacity <= 0) {
+			throw new IllegalArgumentException("Illegal window, batch size or capacity.");
+		}
+		this.sql = sql;
+		this.batch = batch;
+		this.capacity = capacity;
+		this.window = window;
+		this.persister = persister;
+	}
+
+	public synchronized WriteBehind start() {
+		if(flusher != null || closed) return this;
+		flusher = new Thread(this::run, "srt.writeBehind");
+		flusher.setDaemon(true);
+		flusher.start();
+		return this;
+	}
+
+	/**
+	 * @param row The parameters of the INSERT statement
+	 * @return FALSE if the buffer is full(e.g. the database is down), please insert the row directly
+	 */
+	boolean add(MicroState state, Object[] row) {
+		if(pending.size() >= capacity) {
+			overflows.increment();
+			return false;
+		}
+		var entry = new Pending(state, row);
+		pending.put(state.getSalt(), entry);
+		queue.add(entry);
+		if(size.incrementAndGet() < batch) return true;
+		synchronized(signal) {
+			signal.notifyAll();
+		}
+		return true;
+	}
+
+	/**
+	 * @return NULL if the salt is not pending
+	 */
+	MicroState get(long salt) {
+		var result = pending.get(salt);
+		return result != null ? result.state : null;
+	}
+
+	/**
+	 * The pending states of the user
+	 */
+	List<MicroState> getAll(String uid) {
+		var result = new ArrayList<MicroState>();
+		if(uid == null || pending.isEmpty()) return result;
+		for(var entry : pending.values()) {
+			if(uid.equals(entry.state.getUid())) result.add(entry.state);
+		}
+		return result;
+	}
+
+	/**
+	 * Please delete the row(if flushed) after it
+	 */
+	synchronized void remove(long salt) {
+		pending.remove(salt);
+	}
+
+	synchronized void removeAll(String uid) {
+		if(uid == null) return;
+		pending.values().removeIf(entry -> uid.equals(entry.state.getUid()));
+	}
+
+	/**
+	 * Inserts all pending rows batch by batch.
+	 * @return The number of inserted rows
+	 */
+	public synchronized int flush() {
+		int result = 0;
+		var rows = new ArrayList<Object[]>(batch);
+		var entries = new ArrayList<Pending>(batch);
+		for(Pending entry; (entry = queue.peek()) != null;) {
+			if(pending.get(entry.state.getSalt()) == entry) {
+				rows.add(entry.row);
+				entries.add(entry);
+			}
+			queue.poll();
+			size.decrementAndGet();
+			if(rows.size() < batch) continue;
+			var inserted = insert(rows, entries);
+			if(inserted < 0) return result; //Give up this round
+			result += inserted;
+		}
+		if(!rows.isEmpty()) result += Math.max(0, insert(rows, entries));
+		return result;
+	}
+
+	/**
+	 * @return -1 if any row of the batch is queued again
+	 */
+	private int insert(List<Object[]> rows, List<Pending> entries) {
+		try {
+			persister.update(sql, rows.toArray(new Object[0][]));
+			for(var entry : entries) {
+				pending.remove(entry.state.getSalt(), entry);
+			}
+			batches.increment();
+			flushed.add(rows.size());
+			return rows.size();
+		}catch(RuntimeException e) {
+			failures.increment();
+			var rest = settle(e, entries);
+			var inserted = entries.size() - rest.size();
+			if(rest.isEmpty()) return inserted;
+			if(!isConstraintViolation(e)) return requeue(rest);
+			var result = insertOneByOne(rest);
+			return result < 0 ? -1 : inserted + result;
+		}finally {
+			rows.clear();
+			entries.clear();
+		}
+	}
+	
+	/**
+	 * The driver may go on after a failed row(e.g. MYSQL continueBatchOnError), 
+	 * the rows inserted already are settled by the update counts.
+	 * @return The rows not inserted
+	 */
+	private List<Pending> settle(RuntimeException e, List<Pending> entries) {
+		var counts = getUpdateCounts(e);
+		if(counts == null) return new ArrayList<>(entries);
+		var result = new ArrayList<Pending>();
+		for(int i = 0; i < entries.size(); i++) {
+			var entry = entries.get(i);
+			if(i >= counts.length || counts[i] == Statement.EXECUTE_FAILED) {
+				result.add(entry);
+			}else {
+				pending.remove(entry.state.getSalt(), entry);
+				flushed.increment();
+			}
+		}
+		return result;
+	}
+	
+	private static int[] getUpdateCounts(Throwable e) {
+		for(var cause = e; cause != null; cause = cause.getCause()) {
+			if(!(cause instanceof SQLException)) continue;
+			for(var next = (SQLException)cause; next != null; next = next.getNextException()) {
+				if(next instanceof BatchUpdateException) return ((BatchUpdateException)next).getUpdateCounts();
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Finds the offending rows of a failed batch
+	 * @return -1 if any row is queued again
+	 */
+	private int insertOneByOne(List<Pending> entries) {
+		int result = 0;
+		var retries = new ArrayList<Pending>();
+		for(var entry : entries) {
+			try {
+				persister.update(sql, entry.row);
+				pending.remove(entry.state.getSalt(), entry);
+				flushed.increment();
+				result++;
+			}catch(RuntimeException e) {
+				if(isConstraintViolation(e)) {
+					pending.remove(entry.state.getSalt(), entry);
+					dropped.increment();
+				}else {
+					retries.add(entry);
+				}
+			}
+		}
+		return retries.isEmpty() ? result : requeue(retries);
+	}
+	
+	/**
+	 * Retry in the next round
+	 */
+	private int requeue(List<Pending> entries) {
+		for(var entry : entries) {
+			queue.add(entry);
+			size.incrementAndGet();
+		}
+		return -1;
+	}
+	
+	/**
+	 * SQLSTATE class 23: a duplicate key, a NOT NULL or foreign key column...
+	 */
+	static boolean isConstraintViolation(Throwable e) {
+		for(var cause = e; cause != null; cause = cause.getCause()) {
+			if(!(cause instanceof SQLException)) continue;
+			for(var next = (SQLException)cause; next != null; next = next.getNextException()) {
+				var state = next.getSQLState();
+				if(state != null && state.startsWith("23")) return true;
+			}
+		}
+		return false;
+	}
+
+	private void run() {
+		while(!closed) {
+			try {
+				synchronized(signal) {
+					if(size.get() < batch) signal.wait(window);
+				}
+				flush();
+			}catch(InterruptedException e) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Stops the flusher and inserts the rest
+	 */
+	public void close() {
+		synchronized(this) {
+			closed = true;
+			if(flusher != null) flusher.interrupt();
+		}
+		flush();
+	}
+
+	/**
+	 * The configured durability window in milliseconds
+	 */
+	@Override
+	public long getWindow() {
+		return window;
+	}
+
+	/**
+	 * The states in memory, they are lost if the node crashes
+	 */
+	@Override
+	public int getPending() {
+		return pending.size();
+	}
+
+	/**
+	 * The age(milliseconds) of the oldest pending state: the current durability window
+	 */
+	@Override
+	public long getPendingAge() {
+		var oldest = queue.peek();
+		if(oldest == null) return 0;
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldest.since);
+	}
+
+	@Override
+	public long getFlushed() {
+		return flushed.sum();
+	}
+
+	@Override
+	public long getBatches() {
+		return batches.sum();
+	}
+
+	@Override
+	public long getFailures() {
+		return failures.sum();
+	}
+	
+	@Override
+	public long getDropped() {
+		return dropped.sum();
+	}
+	
+	@Override
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	@Override
+	public long getOverflows() {
+		return overflows.sum();
+	}
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.impl;
+
+/**
+ * The metrics of {@link WriteBehind} published via JMX(cn.techarts.srt:type=WriteBehind),
+ * next to the HIKARI pool beans.
+ */
+public interface WriteBehindMBean {
+	/**
+	 * The configured durability window in milliseconds
+	 */
+	long getWindow();
+	
+	/**
+	 * The states in memory, they are lost if the node crashes
+	 */
+	int getPending();
+	
+	/**
+	 * The age(milliseconds) of the oldest pending state: the current durability window
+	 */
+	long getPendingAge();
+	
+	long getFlushed();
+	
+	long getBatches();
+	
+	long getFailures();
+	
+	/**
+	 * The rows given up: a constraint violation
+	 */
+	long getDropped();
+	
+	/**
+	 * The max pending states
+	 */
+	int getCapacity();
+	
+	/**
+	 * The states inserted synchronously because the buffer was full
+	 */
+	long getOverflows();
+}
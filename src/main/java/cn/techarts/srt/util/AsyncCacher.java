@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Function;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.commands.PipelineBinaryCommands;
+import redis.clients.jedis.commands.PipelineCommands;
+
+/**
+ * The asynchronous counterpart of {@link Cacher}.<p>
+ *
+ * Commands of all threads are queued per database and multiplexed over a few
+ * dedicated connections: each connection drains the queue and sends whatever 
+ * has been queued in ONE pipeline, so the throughput is no longer capped by
+ * pool size x RTT. The futures are completed on the connection threads, so the
+ * dependent stages should be cheap(or use the *Async methods of the future).<p>
+ * In cluster mode every batch is sent via a cluster pipeline, one per node.<p>
+ * Each worker holds ONE connection of the {@link Cacher} pool as long as it runs, e.g. 
+ * 4 workers(redis.async.connections) take 4 of the 10 connections(redis.connections) 
+ * of every database in use.
+ */
+public final class AsyncCacher {
+	private static int connections = 4;
+	
+	private static final int MAX_PIPELINE = 512;
+	
+	private static final long RECONNECT_INTERVAL = 100; //ms
+	
+	private static final Map<Integer, Multiplexer> MULTIPLEXERS = new ConcurrentHashMap<>();
+	
+	/**
+	 * @param connections The connections per database(4 by default)
+	 */
+	public static void init(int connections) {
+		if(connections > 0) AsyncCacher.connections = connections;
+	}
+	
+	public static void destroy() {
+		for(var multiplexer : MULTIPLEXERS.values()) {
+			multiplexer.close();
+		}
+		MULTIPLEXERS.clear();
+	}
+	
+	private static <T> CompletableFuture<T> submit(int cache, Function<PipelineCommands, Response<T>> command) {
+		var multiplexer = MULTIPLEXERS.computeIfAbsent(cache, Multiplexer::new);
+		return multiplexer.submit(new Command<T>(command, null));
+	}
+	
+	private static <T> CompletableFuture<T> submitBinary(int cache, Function<PipelineBinaryCommands, Response<T>> command) {
+		var multiplexer = MULTIPLEXERS.computeIfAbsent(cache, Multiplexer::new);
+		return multiplexer.submit(new Command<T>(null, command));
+	}
+	
+	public static CompletableFuture<String> getString(int cache, String key) {
+		return submit(cache, pipeline -> pipeline.get(key));
+	}
+	
+	public static CompletableFuture<String> saveString(int cache, String key, String value) {
+		return submit(cache, pipeline -> pipeline.set(key, value));
+	}
+	
+	/**
+	 * @param ttl Seconds, 0 means never expires
+	 */
+	public static CompletableFuture<String> saveString(int cache, String key, String value, int ttl) {
+		if(ttl <= 0) return saveString(cache, key, value);
+		return submit(cache, pipeline -> pipeline.setex(key, ttl, value));
+	}
+	
+	public static CompletableFuture<String> getMapItem(int cache, String key, String field) {
+		return submit(cache, pipeline -> pipeline.hget(key, field));
+	}
+	
+	public static CompletableFuture<Long> setMapItem(int cache, String key, String field, String value) {
+		return submit(cache, pipeline -> pipeline.hset(key, field, value));
+	}
+	
+	/**
+	 * The TTL of the map is refreshed in the same pipeline
+	 * @param ttl Seconds, 0 means never expires
+	 */
+	public static CompletableFuture<Long> setMapItem(int cache, String key, String field, String value, int ttl) {
+		if(ttl <= 0) return setMapItem(cache, key, field, value);
+		return submit(cache, pipeline -> {
+			var result = pipeline.hset(key, field, value);
+			pipeline.expire(key, ttl);
+			return result;
+		});
+	}
+	
+	public static CompletableFuture<byte[]> getBytes(int cache, byte[] key) {
+		return submitBinary(cache, pipeline -> pipeline.get(key));
+	}
+	
+	/**
+	 * @param ttl Seconds, 0 means never expires
+	 */
+	public static CompletableFuture<String> saveBytes(int cache, byte[] key, byte[] value, int ttl) {
+		if(ttl <= 0) return submitBinary(cache, pipeline -> pipeline.set(key, value));
+		return submitBinary(cache, pipeline -> pipeline.setex(key, ttl, value));
+	}
+	
+	public static CompletableFuture<byte[]> getMapBytes(int cache, byte[] key, byte[] field) {
+		return submitBinary(cache, pipeline -> pipeline.hget(key, field));
+	}
+	
+	/**
+	 * The TTL of the map is refreshed in the same pipeline
+	 * @param ttl Seconds, 0 means never expires
+	 */
+	public static CompletableFuture<Long> setMapBytes(int cache, byte[] key, byte[] field, byte[] value, int ttl) {
+		return submitBinary(cache, pipeline -> {
+			var result = pipeline.hset(key, field, value);
+			if(ttl > 0) pipeline.expire(key, ttl);
+			return result;
+		});
+	}
+	
+	/**
+	 * A text or binary command
+	 */
+	private static final class Command<T> {
+		final CompletableFuture<T> future = new CompletableFuture<>();
+		final Function<PipelineCommands, Response<T>> text;
+		final Function<PipelineBinaryCommands, Response<T>> binary;
+		Response<T> response;
+		
+		Command(Function<PipelineCommands, Response<T>> text, Function<PipelineBinaryCommands, Response<T>> binary){
+			this.text = text;
+			this.binary = binary;
+		}
+		
+		/**
+		 * Both arguments are the same pipeline
+		 */
+		void send(PipelineCommands pipeline, PipelineBinaryCommands same) {
+			response = text != null ? text.apply(pipeline) : binary.apply(same);
+		}
+		
+		void complete() {
+			try {
+				future.complete(response.get());
+			}catch(RuntimeException e) {
+				future.completeExceptionally(e);
+			}
+		}
+	}
+	
+	private static final class Multiplexer {
+		private volatile boolean closed;
+		private final int database;
+		private final List<Thread> workers = new ArrayList<>();
+		private final BlockingQueue<Command<?>> queue = new LinkedBlockingQueue<>();
+		
+		Multiplexer(int database){
+			this.database = database;
+			for(int i = 0; i < connections; i++) {
+				var worker = new Thread(this::run, "srt.async." + database + "." + i);
+				worker.setDaemon(true);
+				worker.start();
+				workers.add(worker);
+			}
+		}
+		
+		<T> CompletableFuture<T> submit(Command<T> result) {
+			if(closed) {
+				result.future.completeExceptionally(new IllegalStateException("Closed"));
+			}else {
+				queue.add(result);
+			}
+			return result.future;
+		}
+		
+		private void run() {
+			var batch = new ArrayList<Command<?>>(MAX_PIPELINE);
+			while(!closed) {
+				try{
+					if(Cacher.isCluster()) {
+						drain(batch, null);
+					}else {
+						try(Jedis connection = Cacher.getConnection(database)){
+							if(connection == null) { //Closed or not configured yet, try again later
+								fail(new IllegalStateException("No REDIS connection"));
+								if(!pause(RECONNECT_INTERVAL)) break;
+								continue;
+							}
+							drain(batch, connection);
+						}
+					}
+				}catch(InterruptedException e) {
+					break;
+				}catch(RuntimeException e) { //The connection is broken, reconnect later
+					for(var command : batch) command.future.completeExceptionally(e);
+					batch.clear();
+					fail(e);
+					if(!pause(RECONNECT_INTERVAL)) break;
+				}
+			}
+			fail(new IllegalStateException("Closed"));
+		}
+		
+		/**
+		 * @param connection NULL means the cluster
+		 */
+		private void drain(List<Command<?>> batch, Jedis connection) throws InterruptedException {
+			while(!closed) {
+				batch.add(queue.take());
+				queue.drainTo(batch, MAX_PIPELINE - 1);
+				if(connection == null) {
+					try(var pipeline = Cacher.clusterPipeline()){
+						for(var command : batch) command.send(pipeline, pipeline);
+						pipeline.sync();
+					}
+				}else {
+					try(var pipeline = connection.pipelined()){
+						for(var command : batch) command.send(pipeline, pipeline);
+						pipeline.sync();
+					}
+				}
+				for(var command : batch) command.complete();
+				batch.clear();
+			}
+		}
+		
+		private static boolean pause(long ms) {
+			try {
+				Thread.sleep(ms);
+				return true;
+			}catch(InterruptedException e) {
+				return false;
+			}
+		}
+		
+		private void fail(Exception e) {
+			for(Command<?> command; (command = queue.poll()) != null;) {
+				command.future.completeExceptionally(e);
+			}
+		}
+		
+		void close() {
+			closed = true;
+			for(var worker : workers) worker.interrupt();
+		}
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.util;
+
+import java.util.Arrays;
+
+/**
+ * ZERO-COPY BASE64URL(RFC 4648 section 5) for tokens.<p>
+ *
+ * It decodes straight from a CharSequence(e.g. the request parameter) into
+ * a caller-supplied byte array and encodes a byte range into a caller-supplied
+ * char array. The output is the same as {@link java.util.Base64#getUrlEncoder()},
+ * padding is optional while decoding.
+ */
+public final class Base64Url {
+	private static final char[] ALPHABET =
+		"ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+	private static final byte[] VALUES = new byte[128];
+
+	static {
+		Arrays.fill(VALUES, (byte)-1);
+		for(int i = 0; i < ALPHABET.length; i++) {
+			VALUES[ALPHABET[i]] = (byte)i;
+		}
+	}
+
+	/**
+	 * The length of the padded text of the given bytes
+	 */
+	public static int encodedLength(int bytes) {
+		return (bytes + 2) / 3 * 4;
+	}
+
+	/**
+	 * @return The length of the decoded bytes or -1 if the text length is illegal.
+	 */
+	public static int decodedLength(CharSequence src) {
+		var length = unpadded(src);
+		if(length < 0) return -1;
+		return length * 3 / 4;
+	}
+
+	//The length without padding or -1
+	private static int unpadded(CharSequence src) {
+		var length = src.length();
+		if((length & 3) == 1) return -1;
+		if((length & 3) == 0 && length > 0) {
+			if(src.charAt(length - 1) == '=') length--;
+			if(src.charAt(length - 1) == '=') length--;
+		}
+		return (length & 3) == 1 ? -1 : length;
+	}
+
+	/**
+	 * Encodes [offset, offset + length) of the source into the target(with padding).
+	 * @return The number of written chars
+	 */
+	public static int encode(byte[] src, int offset, int length, char[] dst, int start) {
+		var required = encodedLength(length);
+		if(dst.length - start < required) {
+			throw new IllegalArgumentException("The target is too small: " + required);
+		}
+		var end = offset + length - length % 3;
+		int i = offset, j = start;
+		while(i < end) {
+			var bits = (src[i++] & 0xFF) << 16 | (src[i++] & 0xFF) << 8 | (src[i++] & 0xFF);
+			dst[j++] = ALPHABET[(bits >>> 18) & 63];
+			dst[j++] = ALPHABET[(bits >>> 12) & 63];
+			dst[j++] = ALPHABET[(bits >>> 6) & 63];
+			dst[j++] = ALPHABET[bits & 63];
+		}
+		var rest = length % 3;
+		if(rest > 0) {
+			var bits = (src[i++] & 0xFF) << 16;
+			if(rest == 2) bits |= (src[i] & 0xFF) << 8;
+			dst[j++] = ALPHABET[(bits >>> 18) & 63];
+			dst[j++] = ALPHABET[(bits >>> 12) & 63];
+			dst[j++] = rest == 2 ? ALPHABET[(bits >>> 6) & 63] : '=';
+			dst[j++] = '=';
+		}
+		return j - start;
+	}
+
+	public static String encode(byte[] src, int offset, int length) {
+		var result = new char[encodedLength(length)];
+		return new String(result, 0, encode(src, offset, length, result, 0));
+	}
+
+	/**
+	 * Decodes the text into the target. The alphabet is verified on the fly.
+	 * @return The number of written bytes, or -1 if the text is not BASE64URL.
+	 */
+	public static int decode(CharSequence src, byte[] dst, int start) {
+		var length = unpadded(src);
+		if(length < 0) return -1;
+		if(dst.length - start < length * 3 / 4) return -1;
+		int i = 0, j = start, bits = 0, bad = 0;
+		var end = length & ~3;
+		while(i < end) {
+			bits = value(src.charAt(i++)) << 18 | value(src.charAt(i++)) << 12 |
+				   value(src.charAt(i++)) << 6 | value(src.charAt(i++));
+			bad |= bits; //Negative if any char is illegal
+			dst[j++] = (byte)(bits >> 16);
+			dst[j++] = (byte)(bits >> 8);
+			dst[j++] = (byte)bits;
+		}
+		var rest = length - end;
+		if(rest > 0) {
+			bits = value(src.charAt(i++)) << 18 | value(src.charAt(i++)) << 12;
+			if(rest == 3) bits |= value(src.charAt(i)) << 6;
+			bad |= bits;
+			dst[j++] = (byte)(bits >> 16);
+			if(rest == 3) dst[j++] = (byte)(bits >> 8);
+		}
+		return bad < 0 ? -1 : j - start;
+	}
+
+	//-1(all bits set) if the char is not in the alphabet
+	private static int value(char c) {
+		return c < 128 ? VALUES[c] : -1;
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.util;
+
+import org.bouncycastle.crypto.digests.Blake3Digest;
+
+/**
+ * BLAKE3 hashing service that reuses ONE digest state per thread.<p>
+ *
+ * BLAKE3 is an XOF, so a digest shorter than 32 bytes is exactly
+ * the prefix of the 256-bits digest(a truncated hash).
+ */
+public final class Blake3 {
+	public static final int DIGEST_LENGTH = 32;
+
+	private static final ThreadLocal<Blake3Digest> DIGESTS =
+			ThreadLocal.withInitial(() -> new Blake3Digest(DIGEST_LENGTH << 3));
+
+	public static byte[] hash(byte[] source, int offset, int length) {
+		return hash(source, offset, length, DIGEST_LENGTH);
+	}
+
+	/**
+	 * @param digestLength The length(in bytes, 1~32) of the truncated digest.
+	 */
+	public static byte[] hash(byte[] source, int offset, int length, int digestLength) {
+		var result = new byte[digestLength];
+		hash(source, offset, length, result, 0, digestLength);
+		return result;
+	}
+
+	/**
+	 * Writes the digest into the caller-supplied buffer
+	 */
+	public static void hash(byte[] source, int offset, int length, byte[] target, int start, int digestLength) {
+		if(digestLength <= 0 || digestLength > DIGEST_LENGTH) {
+			throw new IllegalArgumentException("Unsupported digest length: " + digestLength);
+		}
+		var digest = DIGESTS.get();
+		digest.update(source, offset, length);
+		digest.doFinal(target, start, digestLength); //Reset as well
+	}
+}
@@ -32,10 +32,40 @@ public final class ByteBuf {
 	
 	private ByteBuffer buffer = null;
 	
+	/**
+	 * The initial capacity of the per-thread buffer(SRT payload is 30~60 bytes)
+	 */
+	private static final int LOCAL_CAPACITY = 256;
+	
+	private static final ThreadLocal<ByteBuf> LOCALS = new ThreadLocal<>();
+	
 	public ByteBuf(int capacity) {
 		this.buffer = ByteBuffer.allocateDirect(capacity);
 	}
 	
+	/**
+	 * @param direct Allocates on physical memory if it's true, otherwise on JVM heap.<br>
+	 * A heap buffer is much cheaper for tiny and short-lived data.
+	 */
+	public ByteBuf(int capacity, boolean direct) {
+		this.buffer = allocate(direct, capacity);
+	}
+	
+	/**
+	 * Returns the cleared heap buffer of current thread which capacity is 
+	 * {@value capacity} at least. It's reused by all callers on the thread,
+	 * so DO NOT hold it across another call to this method.
+	 */
+	public static ByteBuf local(int capacity) {
+		var result = LOCALS.get();
+		if(result == null || result.capacity() < capacity) {
+			result = new ByteBuf(Math.max(capacity, LOCAL_CAPACITY), false);
+			LOCALS.set(result);
+		}
+		result.buffer.clear();
+		return result;
+	}
+	
 	public ByteBuf(ByteBuffer buffer) {
 		if(buffer == null) {
 			throw new RuntimeException("Null buffer");
@@ -305,4 +335,12 @@ public final class ByteBuf {
 	public byte[] toBytes() {
 		return this.lend2(0, buffer.limit());
 	}
+	
+	/**
+	 * ZERO-COPY access of a heap buffer: the written bytes are [0, {@link #current()}).<br>
+	 * Returns null if the buffer is allocated on physical memory.
+	 */
+	public byte[] array() {
+		return buffer.hasArray() ? buffer.array() : null;
+	}
 }
\ No newline at end of file
@@ -16,27 +16,51 @@
 
 package cn.techarts.srt.util;
 
+import redis.clients.jedis.ClusterPipeline;
+import redis.clients.jedis.ConnectionPoolConfig;
+import redis.clients.jedis.DefaultJedisClientConfig;
+import redis.clients.jedis.HostAndPort;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
 import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Protocol;
 import redis.clients.jedis.Response;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.commands.JedisBinaryCommands;
+import redis.clients.jedis.commands.JedisCommands;
+import redis.clients.jedis.commands.PipelineBinaryCommands;
+import redis.clients.jedis.commands.PipelineCommands;
 import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.providers.ClusterConnectionProvider;
+import redis.clients.jedis.util.JedisClusterCRC16;
 import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+
+import org.apache.commons.codec.digest.DigestUtils;
 
 import java.io.Serializable;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
 
 /**
  * A REDIS client wrapper that's easier to use.<p>
  * 
  * Serialization is default with JSON REDUCE(Compact.REDUCED)<p>
- * <b>NOTE: The database number 0 is reserved for message queue<b>
+ * <b>NOTE: The database number 0 is reserved for message queue<b><p>
+ * 
+ * In cluster mode(see {@link #initCluster}) there is only ONE database, the argument
+ * cache is ignored. The methods used by tokenizers(strings, map items, their batches
+ * and PUB/SUB) are routed by slot, the others throw an IllegalStateException.
  * 
  * */
 public final class Cacher {
@@ -45,10 +69,26 @@ public final class Cacher {
 	 */
 	private static int CACHE_MSGQUEUE = 0;
 	
-	private static JedisPool connectionPool = null;
+	/**
+	 * One pool per database: a connection selects its database ONCE when it's created,
+	 * so a command costs exactly one round trip(no SELECT per call).
+	 */
+	private static final Map<Integer, JedisPool> connectionPools = new ConcurrentHashMap<>();
+	
+	private static String host = "localhost";
+	
+	private static int port = 6379;
+	
+	private static JedisPoolConfig poolConfig = null;
 	
 	private static boolean CONNECTION_POOL_INITED = false;
 	
+	private static UnifiedJedis cluster = null;
+	
+	private static ClusterConnectionProvider provider = null;
+	
+	private static final Map<String, String> SCRIPTS = new ConcurrentHashMap<>(); //Script -> SHA1
+	
 	/**
 	 * The default server is 127.0.0.1:6379 if you pass null to these arguments.
 	 */
@@ -65,9 +105,12 @@ public final class Cacher {
 		destroy();
 	}
 	
-	public static void initConnectionPool(String host, int port, int max) {
+	/**
+	 * @param max The max connections of EACH database
+	 */
+	public static synchronized void initConnectionPool(String host, int port, int max) {
 		CONNECTION_POOL_INITED = true;
-		if (connectionPool == null) {
+		if (poolConfig == null) {
 			var config = new JedisPoolConfig();
 			config.setMinIdle(1);
 			config.setMaxIdle(20);
@@ -75,34 +118,153 @@ public final class Cacher {
 			config.setTestOnBorrow(false);
 			config.setTestOnReturn(false);
 			config.setTestOnCreate(false);
-		    connectionPool = new JedisPool(config, host, port);
+			Cacher.host = host;
+			Cacher.port = port;
+			Cacher.poolConfig = config;
+		}
+	}
+	
+	/**
+	 * Switches to REDIS Cluster. The slots are discovered from the seed nodes.
+	 * @param nodes The seed nodes, e.g. "10.0.0.1:7000,10.0.0.2:7000"
+	 * @param max The max connections of EACH node
+	 */
+	public static synchronized void initCluster(String nodes, int max) {
+		if(Empty.is(nodes)) return;
+		var seeds = new HashSet<HostAndPort>();
+		for(var node : nodes.split(",")) {
+			if(!node.isBlank()) seeds.add(HostAndPort.from(node.trim()));
+		}
+		var config = new ConnectionPoolConfig();
+		config.setMinIdle(1);
+		config.setMaxTotal(max > 0 ? max : 20);
+		var client = DefaultJedisClientConfig.builder().timeoutMillis(Protocol.DEFAULT_TIMEOUT).build();
+		provider = new ClusterConnectionProvider(seeds, client, config);
+		cluster = new UnifiedJedis(provider, 5, Duration.ofMillis(Protocol.DEFAULT_TIMEOUT * 5));
+	}
+	
+	public static boolean isCluster() {
+		return cluster != null;
+	}
+	
+	/**
+	 * A pipeline routing every command to the node owning its slot
+	 */
+	static ClusterPipeline clusterPipeline() {
+		var result = provider;
+		if(result == null) throw new IllegalStateException("Not in cluster mode");
+		return new ClusterPipeline(result);
+	}
+	
+	/**
+	 * Runs the command on the cluster or a connection of the database
+	 */
+	private static<T> T execute(int cache, Function<JedisCommands, T> command, T otherwise) {
+		var client = cluster;
+		if(client != null) return command.apply(client);
+		try(Jedis connection = getConnection(cache)){
+			if(connection == null) return otherwise;
+			return command.apply(connection);
+		}
+	}
+	
+	/**
+	 * Sends the commands in ONE pipeline(one per node in cluster mode) and waits for the responses.
+	 * @return false if there is no connection
+	 */
+	private static boolean pipelined(int cache, Consumer<PipelineCommands> commands) {
+		if(cluster != null) {
+			try(var pipeline = clusterPipeline()){
+				commands.accept(pipeline);
+				pipeline.sync();
+			}
+			return true;
+		}
+		try(Jedis connection = getConnection(cache)){
+			if(connection == null) return false;
+			try(var pipeline = connection.pipelined()){
+				commands.accept(pipeline);
+				pipeline.sync();
+			}
+			return true;
+		}
+	}
+	
+	/**
+	 * The binary counterpart of {@link #execute(int, Function, Object)}
+	 */
+	private static<T> T executeBinary(int cache, Function<JedisBinaryCommands, T> command, T otherwise) {
+		var client = cluster;
+		if(client != null) return command.apply(client);
+		try(Jedis connection = getConnection(cache)){
+			if(connection == null) return otherwise;
+			return command.apply(connection);
+		}
+	}
+	
+	/**
+	 * The binary counterpart of {@link #pipelined(int, Consumer)}
+	 */
+	private static boolean pipelinedBinary(int cache, Consumer<PipelineBinaryCommands> commands) {
+		if(cluster != null) {
+			try(var pipeline = clusterPipeline()){
+				commands.accept(pipeline);
+				pipeline.sync();
+			}
+			return true;
 		}
+		try(Jedis connection = getConnection(cache)){
+			if(connection == null) return false;
+			try(var pipeline = connection.pipelined()){
+				commands.accept(pipeline);
+				pipeline.sync();
+			}
+			return true;
+		}
+	}
+	
+	private static JedisPool createConnectionPool(int database) {
+		var timeout = Protocol.DEFAULT_TIMEOUT;
+		return new JedisPool(poolConfig, host, port, timeout, null, database);
 	}
 	
-	private static Jedis getConnection() {
+	/**
+	 * Borrows a connection bound to the database
+	 */
+	static Jedis getConnection(int database) {
+		if(cluster != null) {
+			throw new IllegalStateException("Unsupported in cluster mode");
+		}
 		if(!CONNECTION_POOL_INITED) {
 			initConnectionPool("localhost", 6379, 10);
-		}		
-		if(connectionPool == null) return null;
-		if(connectionPool.isClosed()) return null;
-		return connectionPool.getResource();
+		}
+		if(poolConfig == null) return null;
+		var pool = connectionPools.computeIfAbsent(database, Cacher::createConnectionPool);
+		if(pool.isClosed()) return null;
+		return pool.getResource();
 	}
 
 	public static void destroy() {
-		if(connectionPool == null) return;
-		if(connectionPool.isClosed()) return;
-		connectionPool.close();
-		connectionPool.destroy();
+		for(var pool : connectionPools.values()) {
+			if(pool.isClosed()) continue;
+			pool.close();
+			pool.destroy();
+		}
+		connectionPools.clear();
+		if(cluster != null) {
+			cluster.close(); //The provider is closed as well
+			cluster = null;
+			provider = null;
+		}
 	}
 	
 	/**Clear all cached data
 	 * @param cache: -1 Clear all
 	 * */
 	public static void clearCache(int cache) {
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(Math.max(cache, 0))){
 			if(connection == null) return;
 			if(cache >= 0) {
-				connection.select(cache);
 				connection.flushDB();
 			}else {
 				connection.flushAll();
@@ -112,29 +274,22 @@ public final class Cacher {
 	
 	public static void clearCaches(int[] caches) {
 		if(caches == null || caches.length == 0) return;
-		try(Jedis connection = getConnection()){
-			for(int cache : caches) {
-				if(cache >= 0) {
-					connection.select(cache);
-					connection.flushDB();
-				}
-			}
+		for(int cache : caches) {
+			if(cache >= 0) clearCache(cache);
 		}
 	}
 	
 	public static long size(int cache) {
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return 0;
-			connection.select(cache);
 			return connection.dbSize();
 		}
 	}
 	
 	public static Set<String> searchKeys(int cache, String keyPattern){
 		if(keyPattern == null) return null;
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return null;
-			connection.select(cache);
 			return connection.keys(keyPattern);
 		}
 	}
@@ -144,13 +299,25 @@ public final class Cacher {
 	 */
 	public static void remove(int cache, String key) {
 		if(key == null) return;
-		try(Jedis connection = getConnection()){
-			if(connection == null) return;
-			connection.select(cache);
-			if(connection.exists(key)) {
-				connection.del(key);
+		execute(cache, connection -> connection.del(key), 0L);
+	}
+	
+	/**
+	 * Runs the LUA script via EVALSHA. The script itself is sent only if the server 
+	 * does not know it yet(EVAL caches it for the subsequent calls).
+	 * @param keys All keys accessed by the script(the same slot in cluster mode)
+	 * @return The reply of the script, or null if there is no connection
+	 */
+	public static Object evaluate(int cache, String script, List<String> keys, List<String> args) {
+		if(script == null) return null;
+		var sha1 = SCRIPTS.computeIfAbsent(script, DigestUtils::sha1Hex);
+		return execute(cache, connection -> {
+			try {
+				return connection.evalsha(sha1, keys, args);
+			}catch(JedisNoScriptException e) {
+				return connection.eval(script, keys, args);
 			}
-		}
+		}, null);
 	}
 	
 	//---------Single Value (String and Object)-------------------------------------/
@@ -159,33 +326,24 @@ public final class Cacher {
 	 * */
 	public static boolean saveString(int cache, String key, String value, int ttl) {
 		if(key == null || value == null) return false;
-		try(Jedis connection = getConnection()){
-			if(connection == null) return false;
-			connection.select(cache);
-			connection.set(key, value);
-			if(ttl > 0) connection.expire(key, ttl);
+		return execute(cache, connection -> {
+			if(ttl <= 0) {
+				connection.set(key, value);
+			}else {
+				connection.setex(key, ttl, value);
+			}
 			return true;
-		}
+		}, false);
 	}
 	
 	public static String getString(int cache, String key) {
 		if(key == null) return null;
-		try(Jedis connection = getConnection()){
-			if(connection == null) return null;
-			connection.select(cache);
-			return connection.get(key);
-		}
+		return execute(cache, connection -> connection.get(key), null);
 	}
 	
 	public static void removeString(int cache, String key) {
 		if(key == null) return;
-		try(Jedis connection = getConnection()){
-			if(connection == null) return;
-			connection.select(cache);
-			if(connection.exists(key)) {
-				connection.del(key);
-			}
-		}
+		execute(cache, connection -> connection.del(key), 0L);
 	}
 	
 	/**
@@ -193,9 +351,8 @@ public final class Cacher {
 	 */
 	public static void removeStrings(int cache, List<String> keys) {
 		if(keys == null || keys.isEmpty()) return;
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return;
-			connection.select(cache);
 			try(var pipeLine = connection.pipelined()){
 				keys.forEach(key->pipeLine.del(key));
 				pipeLine.sync();
@@ -210,9 +367,8 @@ public final class Cacher {
 		if(key == null || object == null) return;
 		String value = serialize(object);
 		if(Empty.is(value)) return;
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return;
-			connection.select(cache);
 			connection.set(key, value);
 			if(ttl > 0) connection.expire(key, ttl);
 		}
@@ -220,9 +376,8 @@ public final class Cacher {
 	
 	public static<T> T getObject(int cache, String key, Class<T> t) {
 		if(key == null || t == null) return null;
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return null;
-			connection.select(cache);
 			var obj = connection.get(key);
 			return deserialize(obj, t, true);
 		}
@@ -230,9 +385,8 @@ public final class Cacher {
 	
 	public static void removeObject(int cache, String key) {
 		if(key == null) return;
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return;
-			connection.select(cache);
 			if(connection.exists(key)) connection.del(key);
 		}
 	}
@@ -244,9 +398,8 @@ public final class Cacher {
 	 */
 	public static void saveMap(int cache, String key, Map<String, String> value, int ttl) {
 		if(key == null || value == null || value.isEmpty()) return;
-			try(Jedis connection = getConnection()){
+			try(Jedis connection = getConnection(cache)){
 			if(connection == null) return;
-			connection.select(cache);
 			connection.hmset(key, value);
 			if(ttl > 0) connection.expire(key, ttl);
 		}
@@ -257,9 +410,8 @@ public final class Cacher {
 	 * */
 	public static<T> void saveObjectMap(int cache, String key, Map<String, T> value, int ttl) {
 		if(key == null || value == null || value.isEmpty()) return;
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return;
-			connection.select(cache);
 			var val = new HashMap<String, String>();
 			for(var entry: value.entrySet()) {
 				val.put(entry.getKey(), serialize(entry.getValue()));
@@ -275,18 +427,14 @@ public final class Cacher {
 	public static Map<String, String> getMap(int cache, String key){
 		var result = new HashMap<String, String>();
 		if(key == null) return result;
-		try(Jedis connection = getConnection()){
-			if(connection == null) return result;
-			connection.select(cache);
-			var values = connection.hgetAll(key);
-			if(values == null || values.isEmpty()) return result;
-			for(var val : values.entrySet()) {
-				if(!Empty.is(val.getValue())) {
-					result.put(val.getKey(), val.getValue());
-				}
+		var values = execute(cache, connection -> connection.hgetAll(key), null);
+		if(values == null || values.isEmpty()) return result;
+		for(var val : values.entrySet()) {
+			if(!Empty.is(val.getValue())) {
+				result.put(val.getKey(), val.getValue());
 			}
-			return result;
 		}
+		return result;
 	}
 	
 	/**
@@ -295,9 +443,8 @@ public final class Cacher {
 	public static<T> Map<String, T> getMap(int cache, String key, Class<T> t){
 		var result = new HashMap<String, T>();
 		if(key == null) return result;
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return result;
-			connection.select(cache);
 			var values = connection.hgetAll(key);
 			if(values == null || values.isEmpty()) return result;
 			for(var val : values.entrySet()) {
@@ -314,9 +461,8 @@ public final class Cacher {
 	 * */
 	public static void removeMap(int cache, String key) {
 		if(key == null) return;
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return;
-			connection.select(cache);
 			if(connection.exists(key)) {
 				connection.del(key);
 			}
@@ -328,30 +474,19 @@ public final class Cacher {
 	 * */
 	public static void removeMapItem(int cache, String map, String key) {
 		if(map == null || key == null) return;
-		try(Jedis connection = getConnection()){
-			if(connection == null) return;
-			connection.select(cache);
-			if(connection.hexists(map, key)) {
-				connection.hdel(map, key);
-			}
-		}
+		execute(cache, connection -> connection.hdel(map, key), 0L);
 	}
 	
 	public static String getMapItem(int cache, String key, String field) {
 		if(key == null || field == null) return "";
-		try(Jedis connection = getConnection()){
-			if(connection == null) return "";
-			connection.select(cache);
-			var result = connection.hget(key, field);
-			return result == null ? "" : result;
-		}
+		var result = execute(cache, connection -> connection.hget(key, field), null);
+		return result == null ? "" : result;
 	}
 	
 	public static<T> T getMapItem(int cache, String key, String field, Class<T> t) {
 		if(key == null || field == null) return null;
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return null;
-			connection.select(cache);
 			var result = connection.hget(key, field);
 			return Empty.is(result) ? null : deserialize(result, t);
 		}
@@ -363,15 +498,10 @@ public final class Cacher {
 	 */
 	public static void setMapItem(int cache, String key, String field, String value) {
 		if(key == null || field == null) return;
-		try(Jedis connection = getConnection()){
-			if(connection == null) return;
-			connection.select(cache);
-			if(value == null) {
-				connection.hdel(key, field);
-			}else {
-				connection.hset(key, field, value);
-			}
-		}
+		execute(cache, connection -> {
+			if(value == null) return connection.hdel(key, field);
+			return connection.hset(key, field, value);
+		}, 0L);
 	}
 	
 	/**
@@ -380,9 +510,8 @@ public final class Cacher {
 	 */
 	public static<T> void setMapItem(int cache, String key, String field, T object) {
 		if(key == null || field == null) return;
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return;
-			connection.select(cache);
 			if(object == null) {
 				connection.hdel(key, field);
 			}else {
@@ -395,9 +524,8 @@ public final class Cacher {
 	
 	public static void saveList(int cache, String key, List<String> value, int ttl) {
 		if(key == null || Empty.is(value)) return;
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return;
-			connection.select(cache);
 			if(connection.exists(key)) connection.del(key);
 			connection.lpush(key, value.toArray(new String[] {}));
 			if(ttl > 0) connection.expire(key, ttl);
@@ -414,9 +542,8 @@ public final class Cacher {
 	public static List<String> getList(int cache, String key){
 		var result = new ArrayList<String>();
 		if(key == null) return result;
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return result;
-			connection.select(cache);
 			return connection.lrange(key, 0, -1);
 		}
 	}
@@ -424,9 +551,8 @@ public final class Cacher {
 	public static<T> List<T> getList(int cache, String key, Class<T> t){
 		var result = new ArrayList<T>();
 		if(key == null) return result;
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return result;
-			connection.select(cache);
 			var tmp = connection.lrange(key, 0, -1);
 			if(tmp != null && !tmp.isEmpty()) {
 				for(String obj : tmp) {result.add(deserialize(obj, t));}
@@ -437,18 +563,16 @@ public final class Cacher {
 	
 	public static void appendToList(int cache, String key, String value) {
 		if(key == null || Empty.is(value)) return;
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return;
-			connection.select(cache);
 			connection.lpush(key, value);
 		}
 	}
 	
 	public static<T> void appendToList(int cache, String key, T value) {
 		if(key == null || value == null) return;
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return;
-			connection.select(cache);
 			connection.lpush(key, serialize(value));
 		}
 	}
@@ -457,9 +581,8 @@ public final class Cacher {
 	
 	public static void saveSet(int cache, String key, List<String> elements, int ttl) {
 		if(key == null || Empty.is(elements)) return;
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return;
-			connection.select(cache);
 			if(connection.exists(key)) connection.del(key);
 			connection.sadd(key, elements.toArray(new String[0]));
 		}
@@ -467,9 +590,8 @@ public final class Cacher {
 	
 	public static<T> void saveObjectSet(int cache, String key, List<T> elements, int ttl) {
 		if(key == null || Empty.is(elements)) return;
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return;
-			connection.select(cache);
 			if(connection.exists(key)) connection.del(key);
 			int length = elements.size();
 			var result = new String[length];
@@ -483,9 +605,8 @@ public final class Cacher {
 	public static Set<String> getAsSet(int cache, String key) {
 		Set<String> result = new HashSet<String>();
 		if(cache < 0 || key == null) return result;
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return result;
-			connection.select(cache);
 			result = connection.smembers(key);
 			return result != null ? result : new HashSet<String>();
 		}
@@ -493,9 +614,8 @@ public final class Cacher {
 	
 	public static<T> List<T> getAsSet(int cache, String key, Class<T> t) {
 		if(cache < 0 || key == null) return new ArrayList<T>();
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return new ArrayList<T>();
-			connection.select(cache);
 			var items = connection.smembers(key);
 			if(items == null || items.isEmpty()) return new ArrayList<T>();
 			var result = new ArrayList<T>(items.size());
@@ -509,9 +629,8 @@ public final class Cacher {
 	 * */
 	public static void setToSet(int cache, String key, String value) {
 		if(key == null || Empty.is(value)) return;
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return;
-			connection.select(cache);
 			connection.sadd(key, value);
 		}
 	}
@@ -522,36 +641,32 @@ public final class Cacher {
 	 * */
 	public static<T> void setToSet(int cache, String key, T value) {
 		if(key == null || value == null) return;
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return;
-			connection.select(cache);
 			connection.sadd(key, serialize(value));
 		}
 	}
 	
 	public static void removeSetItem(int cache, String key, String value) {
 		if(key == null || Empty.is(value)) return;
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return;
-			connection.select(cache);
 			connection.srem(key, value);
 		}
 	}
 	
 	public static<T> void removeSetItem(int cache, String key, T value) {
 		if(key == null || value == null) return;
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return;
-			connection.select(cache);
 			connection.srem(key, serialize(value));
 		}
 	}
 	
 	public static QueryResult<String> getSetItems(int cache, String key, String pattern, String start){
 		if(key == null) return new QueryResult<String>();
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return new QueryResult<String>();
-			connection.select(cache);
 			var param = new ScanParams().count(200);
 			if(!Empty.is(pattern)) param.match(pattern);
 			var result = connection.sscan(key, start, param);
@@ -561,9 +676,8 @@ public final class Cacher {
 	
 	public static<T> QueryResult<T> getSetItems(int cache, String key, String pattern, String start, int size, Class<T> t){
 		if(key == null) return new QueryResult<T>();
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return new QueryResult<T>();
-			connection.select(cache);
 			var param = new ScanParams().count(size);
 			if(!Empty.is(pattern)) param.match(pattern);
 			var result = connection.sscan(key, start, param);
@@ -583,38 +697,113 @@ public final class Cacher {
 	 * but the implementation is too ugly(MUST check non-null one by one for each item) 
 	 */
 	public static void saveStrings(int cache, Map<String, String> values) {
+		saveStrings(cache, values, 0);
+	}
+	
+	/**
+	 * The same as {@link #saveStrings(int, Map)}, but each key expires after the TTL
+	 * @param ttl Seconds, 0 means never expires
+	 */
+	public static void saveStrings(int cache, Map<String, String> values, int ttl) {
 		if(values == null || values.isEmpty()) return;
-		try(Jedis connection = getConnection()){
-			if(connection == null) return;
-			connection.select(cache);
-			try(var pipeLine = connection.pipelined()){
-				for(var val : values.entrySet()) {
-					if(val.getValue() == null) continue;
+		pipelined(cache, pipeLine -> {
+			for(var val : values.entrySet()) {
+				if(val.getValue() == null) continue;
+				if(ttl <= 0) {
 					pipeLine.set(val.getKey(), val.getValue());
+				}else {
+					pipeLine.setex(val.getKey(), ttl, val.getValue());
 				}
-				pipeLine.sync();
 			}
-		}
+		});
+	}
+	
+	/**
+	 * Save or replace fields of multiple maps via pipeline(one HSET per map).
+	 * @param items {key: {field: value}}
+	 */
+	public static void saveMapItems(int cache, Map<String, Map<String, String>> items) {
+		saveMapItems(cache, items, 0);
+	}
+	
+	/**
+	 * The same as {@link #saveMapItems(int, Map)}, and refreshes the TTL of each map
+	 * @param ttl Seconds, 0 means never expires
+	 */
+	public static void saveMapItems(int cache, Map<String, Map<String, String>> items, int ttl) {
+		if(items == null || items.isEmpty()) return;
+		pipelined(cache, pipeLine -> {
+			for(var item : items.entrySet()) {
+				if(Empty.is(item.getValue())) continue;
+				pipeLine.hset(item.getKey(), item.getValue());
+				if(ttl > 0) pipeLine.expire(item.getKey(), ttl);
+			}
+		});
 	}
 	
 	/**
 	 * Implemented via the command MGET<p>
 	 * IMPORTANT:<br> 
 	 * 1. You must guarantee the collection of keys does not contain NULL strings<br>
-	 * 2. To ensure the result order is same to the input keys, NULL string is allowed. 
+	 * 2. To ensure the result order is same to the input keys, NULL string is allowed.<br>
+	 * 3. In cluster mode the keys are grouped by slot: one MGET per slot, all in ONE pipeline.
 	 */
 	public static List<String> getStrings(int cache, List<String> keys){
 		List<String> result = new ArrayList<>();
 		if(keys == null || keys.isEmpty()) return result;
-		try(Jedis connection = getConnection()){
+		if(cluster != null) return getStringsBySlot(keys);
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return result;
-			connection.select(cache);
 			var target = new String[keys.size()];
 			result = connection.mget(keys.toArray(target));
 			return result != null ? result : new ArrayList<>();
 		}
 	}
 	
+	private static List<String> getStringsBySlot(List<String> keys){
+		var slots = groupBySlot(keys, JedisClusterCRC16::getSlot);
+		var responses = new HashMap<List<Integer>, Response<List<String>>>();
+		pipelined(0, pipeLine -> {
+			for(var indexes : slots.values()) {
+				var target = new String[indexes.size()];
+				for(int i = 0; i < target.length; i++) {
+					target[i] = keys.get(indexes.get(i));
+				}
+				responses.put(indexes, pipeLine.mget(target));
+			}
+		});
+		return reassemble(keys.size(), responses, Response::get);
+	}
+	
+	/**
+	 * @return Slot -> the indexes of its keys(in the order of the keys)
+	 */
+	static<K> Map<Integer, List<Integer>> groupBySlot(List<K> keys, ToIntFunction<K> slotOf){
+		var result = new HashMap<Integer, List<Integer>>();
+		for(int i = 0; i < keys.size(); i++) {
+			var slot = slotOf.applyAsInt(keys.get(i));
+			result.computeIfAbsent(slot, k -> new ArrayList<>()).add(i);
+		}
+		return result;
+	}
+	
+	/**
+	 * Puts the values of every group(e.g. one MGET per slot) back in the order of the keys
+	 * @param size The number of the keys
+	 */
+	static<R, V> List<V> reassemble(int size, Map<List<Integer>, R> responses, Function<R, List<V>> values){
+		var result = new ArrayList<V>(size);
+		for(int i = 0; i < size; i++) result.add(null);
+		for(var response : responses.entrySet()) {
+			var indexes = response.getKey();
+			var group = values.apply(response.getValue());
+			for(int i = 0; i < indexes.size(); i++) {
+				result.set(indexes.get(i), group.get(i));
+			}
+		}
+		return result;
+	}
+	
 	/**
 	 * Implemented batch operations via pipeline.<p>
 	 * Actually, the performance of the command MSET is a bit better than pipeline,
@@ -622,9 +811,8 @@ public final class Cacher {
 	 */
 	public static<T> void saveObjects(int cache, Map<String, T> values) {
 		if(values == null || values.isEmpty()) return;
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return;
-			connection.select(cache);
 			try(var pipeLine = connection.pipelined()){
 				for(var item : values.entrySet()) {
 					var val = serialize(item.getValue());
@@ -644,9 +832,8 @@ public final class Cacher {
 	public static<T> List<T> getObjects(int cache, List<String> keys, Class<T> t){
 		var result = new ArrayList<T>();
 		if(keys == null || keys.isEmpty()) return result;
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return result;
-			connection.select(cache);
 			var target = new String[keys.size()];
 			var resultSet = connection.mget(keys.toArray(target));
 			if(Empty.is(resultSet)) return result;
@@ -663,9 +850,8 @@ public final class Cacher {
 	public static List<String> getMapItems(int cache, String key, String... fields) {
 		List<String> result = new ArrayList<>();
 		if(key == null || fields == null || fields.length == 0) return result;
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return result;
-			connection.select(cache);
 			result = connection.hmget(key, fields);
 			return result != null ? result : new ArrayList<>();
 		}
@@ -677,9 +863,8 @@ public final class Cacher {
 	public static List<String> getMapItems(int cache, Map<String, String> kvs) {
 		var result = new ArrayList<String>();
 		if(kvs == null || kvs.isEmpty()) return result;
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return result;
-			connection.select(cache);
 			try(var pipeLine = connection.pipelined()){
 				var tmp = new ArrayList<Response<String>>();
 				for(var kv : kvs.entrySet()) {
@@ -695,15 +880,31 @@ public final class Cacher {
 		}
 	}
 	
+	/**
+	 * Returns the field[i] of the map key[i] via pipeline, a key may repeat.<br>
+	 * The result order is same to the input keys, NULL string is allowed.
+	 */
+	public static List<String> getMapItems(int cache, List<String> keys, List<String> fields) {
+		var result = new ArrayList<String>();
+		if(keys == null || fields == null || keys.isEmpty()) return result;
+		var tmp = new ArrayList<Response<String>>(keys.size());
+		pipelined(cache, pipeLine -> {
+			for(int i = 0; i < keys.size(); i++) {
+				tmp.add(pipeLine.hget(keys.get(i), fields.get(i)));
+			}
+		});
+		for(var res : tmp) result.add(res.get());
+		return result;
+	}
+	
 	/**
 	 * Returns multiple fields from ONE map and it's implemented via the command HMGET
 	 */
 	public static<T> List<T> getMapObjects(int cache, String key, Class<T> t, String... fields) {
 		var result = new ArrayList<T>();
 		if(key == null || fields == null || fields.length == 0) return result;
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return result;
-			connection.select(cache);
 			var resultSet = connection.hmget(key, fields);
 			if(Empty.is(resultSet)) return result;
 			for(var res : resultSet) {
@@ -719,9 +920,8 @@ public final class Cacher {
 	public static<T> List<T> getMapObjects(int cache, Map<String, String> kvs, Class<T> t) {
 		var result = new ArrayList<T>();
 		if(kvs == null || kvs.isEmpty()) return result;
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return result;
-			connection.select(cache);
 			try(var pipeLine = connection.pipelined()){
 				var tmp = new ArrayList<Response<String>>();
 				for(var kv : kvs.entrySet()) {
@@ -739,9 +939,8 @@ public final class Cacher {
 	public static<T> List<T> getMapObjects(int cache, String key, List<String> fields, Class<T> t) {
 		var result = new ArrayList<T>();
 		if(key == null || Empty.is(fields)) return result;
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(cache)){
 			if(connection == null) return result;
-			connection.select(cache);
 			var target = new String[fields.size()];
 			target = fields.toArray(target);
 			var resultSet = connection.hmget(key, target);
@@ -753,6 +952,136 @@ public final class Cacher {
 		}
 	}
 	
+	//-------------BINARY API(Compact keys and values)--------------------------------/
+	
+	public static void remove(int cache, byte[] key) {
+		if(key == null) return;
+		executeBinary(cache, connection -> connection.del(key), 0L);
+	}
+	
+	public static byte[] getBytes(int cache, byte[] key) {
+		if(key == null) return null;
+		return executeBinary(cache, connection -> connection.get(key), null);
+	}
+	
+	/**
+	 * @param ttl Seconds, 0 means never expires
+	 */
+	public static boolean saveBytes(int cache, byte[] key, byte[] value, int ttl) {
+		if(key == null || value == null) return false;
+		return executeBinary(cache, connection -> {
+			if(ttl <= 0) {
+				connection.set(key, value);
+			}else {
+				connection.setex(key, ttl, value);
+			}
+			return true;
+		}, false);
+	}
+	
+	/**
+	 * All values are saved in one pipeline
+	 * @param values The value of each key(the same size and order)
+	 * @param ttl Seconds, 0 means never expires
+	 */
+	public static void saveBytes(int cache, List<byte[]> keys, List<byte[]> values, int ttl) {
+		if(keys == null || values == null || keys.isEmpty()) return;
+		pipelinedBinary(cache, pipeLine -> {
+			for(int i = 0; i < keys.size(); i++) {
+				if(values.get(i) == null) continue;
+				if(ttl <= 0) {
+					pipeLine.set(keys.get(i), values.get(i));
+				}else {
+					pipeLine.setex(keys.get(i), ttl, values.get(i));
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Implemented via the command MGET(one per slot in cluster mode, all in ONE pipeline).
+	 * @return The values in the same order of the keys(NULL if absent)
+	 */
+	public static List<byte[]> getBytes(int cache, List<byte[]> keys){
+		if(keys == null || keys.isEmpty()) return new ArrayList<>();
+		var slots = groupBySlot(keys, key -> cluster == null ? 0 : JedisClusterCRC16.getSlot(key));
+		var responses = new HashMap<List<Integer>, Response<List<byte[]>>>();
+		pipelinedBinary(cache, pipeLine -> {
+			for(var indexes : slots.values()) {
+				var target = new byte[indexes.size()][];
+				for(int i = 0; i < target.length; i++) {
+					target[i] = keys.get(indexes.get(i));
+				}
+				responses.put(indexes, pipeLine.mget(target));
+			}
+		});
+		return reassemble(keys.size(), responses, Response::get);
+	}
+	
+	public static byte[] getMapBytes(int cache, byte[] key, byte[] field) {
+		if(key == null || field == null) return null;
+		return executeBinary(cache, connection -> connection.hget(key, field), null);
+	}
+	
+	public static Map<byte[], byte[]> getMapBytes(int cache, byte[] key) {
+		if(key == null) return Map.of();
+		var result = executeBinary(cache, connection -> connection.hgetAll(key), null);
+		return result != null ? result : Map.of();
+	}
+	
+	public static void removeMapBytes(int cache, byte[] key, byte[] field) {
+		if(key == null || field == null) return;
+		executeBinary(cache, connection -> connection.hdel(key, field), 0L);
+	}
+	
+	/**
+	 * Saves the fields of each map and refreshes its TTL in one pipeline
+	 * @param items The fields of each key(the same size and order)
+	 * @param ttl Seconds, 0 means never expires
+	 */
+	public static void saveMapBytes(int cache, List<byte[]> keys, List<Map<byte[], byte[]>> items, int ttl) {
+		if(keys == null || items == null || keys.isEmpty()) return;
+		pipelinedBinary(cache, pipeLine -> {
+			for(int i = 0; i < keys.size(); i++) {
+				if(Empty.is(items.get(i))) continue;
+				pipeLine.hset(keys.get(i), items.get(i));
+				if(ttl > 0) pipeLine.expire(keys.get(i), ttl);
+			}
+		});
+	}
+	
+	/**
+	 * All fields are fetched in one pipeline(one per node in cluster mode)
+	 * @param fields The field of each key(the same size and order)
+	 */
+	public static List<byte[]> getMapBytes(int cache, List<byte[]> keys, List<byte[]> fields) {
+		var result = new ArrayList<byte[]>();
+		if(keys == null || fields == null || keys.isEmpty()) return result;
+		var tmp = new ArrayList<Response<byte[]>>(keys.size());
+		pipelinedBinary(cache, pipeLine -> {
+			for(int i = 0; i < keys.size(); i++) {
+				tmp.add(pipeLine.hget(keys.get(i), fields.get(i)));
+			}
+		});
+		for(var res : tmp) result.add(res.get());
+		return result;
+	}
+	
+	/**
+	 * The binary counterpart of {@link #evaluate(int, String, List, List)}
+	 */
+	public static Object evaluateBytes(int cache, String script, List<byte[]> keys, List<byte[]> args) {
+		if(script == null) return null;
+		var sha1 = SCRIPTS.computeIfAbsent(script, DigestUtils::sha1Hex).getBytes();
+		return executeBinary(cache, connection -> {
+			try {
+				return connection.evalsha(sha1, keys, args);
+			}catch(JedisNoScriptException e) {
+				return connection.eval(script.getBytes(), keys, args);
+			}
+		}, null);
+	}
+	
 	//------------ Message Queue API-------------------------------------------------/
 	//We implemented 2 kinds of message queue: P2P and PUB/SUB
 	
@@ -762,18 +1091,16 @@ public final class Cacher {
 		if(message == null) return;
 		if(Empty.is(message.getChannel())) return;
 		if(Empty.is(message.getMessage())) return;
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(CACHE_MSGQUEUE)){
 			if(connection == null) return;
-			connection.select(CACHE_MSGQUEUE);
 			connection.lpush(message.getChannel(), message.getMessage());
 		}
 	}	
 	
 	public static<T> T consumeMessage(String channel, Class<T> t) {
 		if(channel == null || t == null) return null;
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(CACHE_MSGQUEUE)){
 			if(connection == null) return null;
-			connection.select(CACHE_MSGQUEUE);
 			var obj = connection.brpop(1000, channel);
 			if(Empty.is(obj)) return null;
 			return deserialize(obj.get(0), t);
@@ -782,9 +1109,8 @@ public final class Cacher {
 	
 	public static QueuedMessage consumeMessage(String channel) {
 		if(channel == null) return null;
-		try(Jedis connection = getConnection()){
+		try(Jedis connection = getConnection(CACHE_MSGQUEUE)){
 			if(connection == null) return null;
-			connection.select(CACHE_MSGQUEUE);
 			var obj = connection.brpop(1000, channel);
 			if(Empty.is(obj)) return null;
 			return new QueuedMessage(channel, obj.get(0));
@@ -798,9 +1124,14 @@ public final class Cacher {
 	
 	//The 2nd: PUB/SUB message queue (The below 2 methods)
 	public static void publish(String channel, Object message) {
-		try(Jedis connection = getConnection()){
+		var msg = serialize(message);
+		var client = cluster;
+		if(client != null) { //A message is forwarded to all nodes of the cluster
+			client.publish(channel, msg);
+			return;
+		}
+		try(Jedis connection = getConnection(CACHE_MSGQUEUE)){
 			if(connection == null) return;
-			var msg = serialize(message);
 			connection.publish(channel, msg);
 		}
 	}
@@ -811,7 +1142,7 @@ public final class Cacher {
 	public static void subscribe(String channel, JedisPubSub subscriber) {
 		for(;;) {
 			try { //Auto release resource while exception
-				try(Jedis connection = getConnection()){
+				try(Jedis connection = subscriber()){
 					if(connection == null) return;
 					connection.subscribe(subscriber, channel);
 				}
@@ -822,6 +1153,13 @@ public final class Cacher {
 		}
 	}
 	
+	//Any node of the cluster is fine
+	private static Jedis subscriber() {
+		var nodes = provider;
+		if(nodes == null) return getConnection(CACHE_MSGQUEUE);
+		return new Jedis(nodes.getConnection());
+	}
+	
 	private static void sleep(long ms) {
 		try {
 			Thread.sleep(ms);
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.util;
+
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * AES-GCM bound to ONE key. The key spec is built once and every thread
+ * keeps its own Cipher, so the provider lookup is paid once per thread.<p>
+ *
+ * The 96-bits nonce is a per-thread 64-bits random prefix(SecureRandom)
+ * followed by a 32-bits counter. The prefix is renewed before the counter
+ * wraps, so a nonce is never reused with the same key.<p>
+ *
+ * Layout of the ciphertext: NONCE(12) + CIPHER BYTES + TAG(16)
+ */
+public final class CipherEngine {
+	private final SecretKeySpec key;
+	private final ThreadLocal<Context> contexts;
+
+	public static final int IV_SIZE = 12, TAG_SIZE = 16;
+	private static final String A_KEY = "AES", A_SYMMTRIC = "AES/GCM/NoPadding";
+
+	private static final SecureRandom SEEDER = new SecureRandom();
+
+	public CipherEngine(byte[] key) {
+		if(Empty.is(key)) {
+			throw new RuntimeException("Null key");
+		}
+		this.key = new SecretKeySpec(key, A_KEY);
+		this.contexts = ThreadLocal.withInitial(Context::new);
+	}
+
+	/**
+	 * The length of ciphertext(including nonce and tag) of the given plain length
+	 */
+	public static int sizeOf(int plain) {
+		return IV_SIZE + plain + TAG_SIZE;
+	}
+
+	/**
+	 * The length of plain bytes of the given ciphertext length
+	 */
+	public static int plainSizeOf(int encrypted) {
+		return encrypted - IV_SIZE - TAG_SIZE;
+	}
+
+	public byte[] encrypt(byte[] source) {
+		if(source == null) return null;
+		var result = new byte[sizeOf(source.length)];
+		encrypt(source, 0, source.length, result, 0);
+		return result;
+	}
+
+	/**
+	 * Encrypts the plain bytes into the caller-supplied buffer.
+	 * @return The length of the written ciphertext
+	 */
+	public int encrypt(byte[] source, int offset, int length, byte[] target, int start) {
+		var ctx = contexts.get();
+		try {
+			ctx.nextNonce(target, start);
+			var spec = new GCMParameterSpec(TAG_SIZE << 3, target, start, IV_SIZE);
+			ctx.cipher.init(Cipher.ENCRYPT_MODE, key, spec);
+			return IV_SIZE + ctx.cipher.doFinal(source, offset, length, target, start + IV_SIZE);
+		}catch(Exception e) {
+			throw new RuntimeException("Failed to encrypt the token", e);
+		}
+	}
+
+	public byte[] decrypt(byte[] target) {
+		if(target == null) return null;
+		var result = new byte[Math.max(0, plainSizeOf(target.length))];
+		decrypt(target, 0, target.length, result, 0);
+		return result;
+	}
+
+	/**
+	 * Decrypts into the caller-supplied buffer. In-place(source == target) is allowed.
+	 * @return The length of the plain bytes
+	 */
+	public int decrypt(byte[] source, int offset, int length, byte[] target, int start) {
+		var cipher = contexts.get().cipher;
+		try {
+			var spec = new GCMParameterSpec(TAG_SIZE << 3, source, offset, IV_SIZE);
+			cipher.init(Cipher.DECRYPT_MODE, key, spec);
+			return cipher.doFinal(source, offset + IV_SIZE, length - IV_SIZE, target, start);
+		}catch(Exception e) {
+			throw new RuntimeException("Failed to decrypt the token", e);
+		}
+	}
+
+	/**
+	 * The same as {@link #decrypt(byte[], int, int, byte[], int)} but never throws.<br>
+	 * It's designed for untrusted input: a forged or damaged token is quite normal.
+	 * @return The length of the plain bytes, or -1 if the decryption is failed.
+	 */
+	public int tryDecrypt(byte[] source, int offset, int length, byte[] target, int start) {
+		if(length < IV_SIZE + TAG_SIZE) return -1;
+		var cipher = contexts.get().cipher;
+		try {
+			var spec = new GCMParameterSpec(TAG_SIZE << 3, source, offset, IV_SIZE);
+			cipher.init(Cipher.DECRYPT_MODE, key, spec);
+			return cipher.doFinal(source, offset + IV_SIZE, length - IV_SIZE, target, start);
+		}catch(Exception e) {
+			return -1;
+		}
+	}
+
+	private static final class Context {
+		private int counter;
+		private long prefix;
+		private final Cipher cipher;
+
+		Context(){
+			this.prefix = SEEDER.nextLong();
+			try {
+				this.cipher = Cipher.getInstance(A_SYMMTRIC);
+			}catch(Exception e) {
+				throw new RuntimeException("Unsupported algorithm: " + A_SYMMTRIC, e);
+			}
+		}
+
+		void nextNonce(byte[] target, int start) {
+			if(++counter == 0) prefix = SEEDER.nextLong();
+			for(int i = 7; i >= 0; i--) {
+				target[start + i] = (byte)(prefix >>> ((7 - i) << 3));
+			}
+			target[start + 8] = (byte)(counter >>> 24);
+			target[start + 9] = (byte)(counter >>> 16);
+			target[start + 10] = (byte)(counter >>> 8);
+			target[start + 11] = (byte)counter;
+		}
+	}
+}
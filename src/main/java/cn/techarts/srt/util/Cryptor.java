@@ -30,7 +30,6 @@ import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.SecureRandom;
 import java.security.Signature;
-import java.util.Arrays;
 
 /**
  * @author rocwon@gmail.com
@@ -42,20 +41,23 @@ public final class Cryptor
 	private static final String A_KEY = "AES";
 	private static final int IV_SIZE = 12, TAG_SIZE = 128;
 	private static final String A_SYMMTRIC = "AES/GCM/NoPadding";
+	private static final SecureRandom RANDOM = new SecureRandom();
+	private static final char[] LOWER_DIGITS = "0123456789abcdef".toCharArray();
+	private static final char[] UPPER_DIGITS = "0123456789ABCDEF".toCharArray();
 	
 	
 	/**
 	 *Convert bytes array to a hex string 
 	 */
 	public static String toHex(byte[] source, boolean upperCase) {
-		var result = new StringBuilder(32);
-		for(byte b : source) {
-			int val = ((int)b) & 0xFF;
-			if (val < 16) result.append("0");
-			result.append(Integer.toHexString(val));
+		var digits = upperCase ? UPPER_DIGITS : LOWER_DIGITS;
+		var result = new char[source.length << 1];
+		for(int i = 0; i < source.length; i++) {
+			int val = source[i] & 0xFF;
+			result[i << 1] = digits[val >>> 4];
+			result[(i << 1) + 1] = digits[val & 15];
 		}
-		var encrypted = result.toString();
-		return upperCase ? encrypted.toUpperCase() : encrypted;
+		return new String(result);
     }
 	
 	/**
@@ -63,14 +65,13 @@ public final class Cryptor
 	 */
 	public static byte[] toBytes(String hex) {
         if (Empty.is(hex)) return null;
-        var hexLength = hex.length();
-        var chars = hex.toCharArray();
-        var result = new byte[hexLength / 2];
+        var result = new byte[hex.length() / 2];
         for(int i = 0; i < result.length; i++) {
-        	var hc = String.valueOf(chars[i * 2]);
-        	var lc = String.valueOf(chars[i * 2 + 1]);
-        	var hi = Integer.parseInt(hc, 16);
-        	var li = Integer.parseInt(lc, 16);
+        	var hi = Character.digit(hex.charAt(i * 2), 16);
+        	var li = Character.digit(hex.charAt(i * 2 + 1), 16);
+        	if(hi < 0 || li < 0) {
+        		throw new NumberFormatException("Invalid hex string: " + hex);
+        	}
         	result[i] = (byte)(hi * 16 + li);
         }
         return result;
@@ -112,7 +113,7 @@ public final class Cryptor
 	
 	private static byte[] getNonce() {
 		var result = new byte[IV_SIZE];
-		new SecureRandom().nextBytes(result);
+		RANDOM.nextBytes(result);
 		return result;
 	}
 	
@@ -146,14 +147,11 @@ public final class Cryptor
 	public static byte[] decrypt(byte[] target, byte[] key) {
 		if(Empty.is(target) || Empty.is(key)) return null;
 		try {
-			
-			 var iv = Arrays.copyOfRange(target, 0, IV_SIZE);
-			 var cipherBytes = Arrays.copyOfRange(target, IV_SIZE, target.length);
 			var secretKey = new SecretKeySpec(key, A_KEY);
 			var cipher = Cipher.getInstance(A_SYMMTRIC);
-			var gcmSpec = new GCMParameterSpec(TAG_SIZE, iv);
+			var gcmSpec = new GCMParameterSpec(TAG_SIZE, target, 0, IV_SIZE);
 			cipher.init(Cipher.DECRYPT_MODE, secretKey, gcmSpec);
-			return cipher.doFinal(cipherBytes);
+			return cipher.doFinal(target, IV_SIZE, target.length - IV_SIZE);
 		}catch(Exception e) {
 			throw new RuntimeException("Failed to decrypt [" + target + "]", e);
 		}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A cuckoo filter of primitive longs: 4 slots per bucket, 32-bits fingerprints.<p>
+ *
+ * The expected false-positive rate is about 8 / 2^32 * load factor, so a hit is 
+ * trustworthy enough to act on. Unlike a bloom filter, a key can be removed.
+ * Lookups are lock-free, writes are synchronized. A lookup racing with a relocation
+ * may miss a key(a false negative), so the caller must treat a miss as "unknown".
+ */
+public final class CuckooFilter {
+	private final int mask;
+	private final int[] slots;
+	private int count;
+	private volatile long victim; //FINGERPRINT(32) + BUCKET(32) kicked out finally(0: none)
+	
+	private static final int BUCKET = 4, MAX_KICKS = 500;
+	private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(int[].class);
+	
+	/**
+	 * @param capacity The expected number of keys(the filter holds 95% of slots at least)
+	 */
+	public CuckooFilter(int capacity) {
+		var buckets = (int)Math.ceil(Math.max(capacity, BUCKET) / (BUCKET * 0.95));
+		buckets = Integer.highestOneBit(buckets - 1) << 1;
+		this.mask = buckets - 1;
+		this.slots = new int[buckets * BUCKET];
+	}
+	
+	//The finalizer of SplitMix64
+	private static long hash(long key) {
+		key = (key ^ (key >>> 30)) * 0xBF58476D1CE4E5B9L;
+		key = (key ^ (key >>> 27)) * 0x94D049BB133111EBL;
+		return key ^ (key >>> 31);
+	}
+	
+	private static int fingerprint(long hash) {
+		var result = (int)(hash >>> 32);
+		return result == 0 ? 1 : result; //0 marks a free slot
+	}
+	
+	private int alternate(int bucket, int fingerprint) {
+		return (bucket ^ (fingerprint * 0x5BD1E995)) & mask;
+	}
+	
+	private boolean has(int bucket, int fingerprint) {
+		var base = bucket * BUCKET;
+		for(int i = 0; i < BUCKET; i++) {
+			if((int)SLOTS.getAcquire(slots, base + i) == fingerprint) return true;
+		}
+		return false;
+	}
+	
+	public boolean mightContain(long key) {
+		var hash = hash(key);
+		var f = fingerprint(hash);
+		var bucket = (int)hash & mask;
+		var other = alternate(bucket, f);
+		if(has(bucket, f) || has(other, f)) return true;
+		var v = victim;
+		if(v == 0 || (int)(v >>> 32) != f) return false;
+		return (int)v == bucket || (int)v == other;
+	}
+	
+	private boolean insert(int bucket, int fingerprint) {
+		var base = bucket * BUCKET;
+		for(int i = 0; i < BUCKET; i++) {
+			if(slots[base + i] != 0) continue;
+			SLOTS.setRelease(slots, base + i, fingerprint);
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * @return false if the filter is full and the key can't be added.
+	 */
+	public synchronized boolean add(long key) {
+		if(victim != 0) return false;
+		var hash = hash(key);
+		var f = fingerprint(hash);
+		var bucket = (int)hash & mask;
+		if(insert(bucket, f) || insert(alternate(bucket, f), f)) {
+			count++;
+			return true;
+		}
+		var random = ThreadLocalRandom.current();
+		if(random.nextBoolean()) bucket = alternate(bucket, f);
+		for(int n = 0; n < MAX_KICKS; n++) {
+			var slot = bucket * BUCKET + random.nextInt(BUCKET);
+			var kicked = slots[slot];
+			SLOTS.setRelease(slots, slot, f);
+			f = kicked;
+			bucket = alternate(bucket, f);
+			if(insert(bucket, f)) {
+				count++;
+				return true;
+			}
+		}
+		//Keeps the homeless fingerprint, so nothing is lost
+		victim = (long)f << 32 | (bucket & 0xFFFFFFFFL);
+		count++;
+		return true;
+	}
+	
+	public synchronized boolean remove(long key) {
+		var hash = hash(key);
+		var f = fingerprint(hash);
+		var bucket = (int)hash & mask;
+		var other = alternate(bucket, f);
+		if(delete(bucket, f) || delete(other, f)) {
+			count--;
+			relocateVictim();
+			return true;
+		}
+		var v = victim;
+		if(v == 0 || (int)(v >>> 32) != f) return false;
+		if((int)v != bucket && (int)v != other) return false;
+		victim = 0;
+		count--;
+		return true;
+	}
+	
+	private boolean delete(int bucket, int fingerprint) {
+		var base = bucket * BUCKET;
+		for(int i = 0; i < BUCKET; i++) {
+			if(slots[base + i] != fingerprint) continue;
+			SLOTS.setRelease(slots, base + i, 0);
+			return true;
+		}
+		return false;
+	}
+	
+	private void relocateVictim() {
+		if(victim == 0) return;
+		var f = (int)(victim >>> 32);
+		var bucket = (int)victim & mask;
+		if(insert(bucket, f) || insert(alternate(bucket, f), f)) victim = 0;
+	}
+	
+	public synchronized void clear() {
+		Arrays.fill(slots, 0);
+		victim = 0;
+		count = 0;
+	}
+	
+	public int size() {
+		return count;
+	}
+	
+	public int capacity() {
+		return slots.length;
+	}
+	
+	/**
+	 * The memory of the slots in bytes
+	 */
+	public long memory() {
+		return slots.length * 4L;
+	}
+	
+	public double loadFactor() {
+		return (double)count / slots.length;
+	}
+	
+	/**
+	 * The theoretical false-positive rate at the current load: 2 buckets are probed
+	 */
+	public double expectedFpp() {
+		return 2.0 * BUCKET * loadFactor() / 0x1p32;
+	}
+}
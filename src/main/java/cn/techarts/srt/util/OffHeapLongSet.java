@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * An OFF-HEAP open-addressing(linear probing) hash set of primitive long salts.<p>
+ *
+ * Each entry is 12 bytes in a direct buffer: salt(8) + deadline(4, seconds since 2020),
+ * so tens of millions of salts cost no GC at all. The set is split into segments,
+ * reads are lock-free(optimistic) and writes lock ONE segment. An expired entry is
+ * reused by the next insertion and purged when the segment is rebuilt.
+ * The salt 0 marks a free slot and a removal shifts the probe chain backward(no tombstones).
+ */
+public final class OffHeapLongSet implements SaltSet {
+	private final int ttl;
+	private final Segment[] segments;
+	
+	private static final int SLOT = 12; //salt(8) + deadline(4)
+	private static final int SEGMENT_BITS = 6;
+	private static final int MIN_SLOTS = 16, MAX_SLOTS = 1 << 27;
+	private static final long EPOCH = 1577836800L; //2020-01-01 00:00:00 UTC
+	private static final float LOAD_FACTOR = 0.75f;
+	
+	/**
+	 * @param expected The expected number of salts(pre-allocated)
+	 * @param ttl The default time to live of an entry in seconds
+	 */
+	public OffHeapLongSet(long expected, int ttl) {
+		if(expected < 0 || ttl < 0) {
+			throw new IllegalArgumentException("Illegal capacity or TTL.");
+		}
+		this.ttl = ttl;
+		this.segments = new Segment[1 << SEGMENT_BITS];
+		var slots = (long)Math.ceil(expected / LOAD_FACTOR) >> SEGMENT_BITS;
+		for(int i = 0; i < segments.length; i++) {
+			segments[i] = new Segment(tableSize(slots));
+		}
+	}
+	
+	private static int tableSize(long slots) {
+		if(slots <= MIN_SLOTS) return MIN_SLOTS;
+		if(slots >= MAX_SLOTS) return MAX_SLOTS;
+		return Integer.highestOneBit((int)slots - 1) << 1;
+	}
+	
+	private static long hash(long salt) {
+		return salt * 0x9E3779B97F4A7C15L;
+	}
+	
+	private Segment segment(long hash) {
+		return segments[(int)(hash >>> (64 - SEGMENT_BITS))];
+	}
+	
+	private static int now() {
+		return (int)(System.currentTimeMillis() / 1000 - EPOCH);
+	}
+	
+	@Override
+	public boolean contains(long salt) {
+		if(salt == 0) return false;
+		var hash = hash(salt);
+		return segment(hash).contains(salt, (int)(hash >>> 32), now());
+	}
+	
+	@Override
+	public void put(long salt) {
+		put(salt, ttl);
+	}
+	
+	/**
+	 * @param ttl The time to live of the entry in seconds
+	 */
+	public void put(long salt, int ttl) {
+		if(salt == 0) return;
+		var hash = hash(salt);
+		segment(hash).put(salt, (int)(hash >>> 32), now(), ttl);
+	}
+	
+	@Override
+	public void invalidate(long salt) {
+		if(salt == 0) return;
+		var hash = hash(salt);
+		segment(hash).remove(salt, (int)(hash >>> 32));
+	}
+	
+	@Override
+	public void clear() {
+		for(var segment : segments) segment.clear();
+	}
+	
+	/**
+	 * The number of occupied slots(including the expired but not purged)
+	 */
+	public long size() {
+		long result = 0;
+		for(var segment : segments) result += segment.count;
+		return result;
+	}
+	
+	public long capacity() {
+		long result = 0;
+		for(var segment : segments) result += segment.table.mask + 1;
+		return result;
+	}
+	
+	/**
+	 * The off-heap memory in bytes
+	 */
+	public long memory() {
+		return capacity() * SLOT;
+	}
+	
+	private static final class Table {
+		final int mask;
+		final ByteBuffer buf;
+		
+		Table(int slots){
+			this.mask = slots - 1;
+			this.buf = ByteBuffer.allocateDirect(slots * SLOT);
+		}
+		
+		long salt(int i) {
+			return buf.getLong(i * SLOT);
+		}
+		
+		int deadline(int i) {
+			return buf.getInt(i * SLOT + 8);
+		}
+		
+		void set(int i, long salt, int deadline) {
+			buf.putLong(i * SLOT, salt);
+			buf.putInt(i * SLOT + 8, deadline);
+		}
+	}
+	
+	private static final class Segment {
+		private int count;
+		private Table table;
+		private final StampedLock lock = new StampedLock();
+		
+		Segment(int slots){
+			this.table = new Table(slots);
+		}
+		
+		boolean contains(long salt, int hash, int now) {
+			var stamp = lock.tryOptimisticRead();
+			if(stamp != 0) {
+				try {
+					var result = find(table, salt, hash, now);
+					if(lock.validate(stamp)) return result;
+				}catch(IndexOutOfBoundsException e) {
+					//A torn read while the table is being rebuilt
+				}
+			}
+			stamp = lock.readLock();
+			try {
+				return find(table, salt, hash, now);
+			}finally {
+				lock.unlockRead(stamp);
+			}
+		}
+		
+		private static boolean find(Table t, long salt, int hash, int now) {
+			for(int n = 0, i = hash & t.mask; n <= t.mask; n++, i = (i + 1) & t.mask) {
+				var key = t.salt(i);
+				if(key == 0) return false;
+				if(key == salt) return t.deadline(i) - now > 0;
+			}
+			return false;
+		}
+		
+		void put(long salt, int hash, int now, int ttl) {
+			var stamp = lock.writeLock();
+			try {
+				if(count >= table.mask) rebuild(now); //At least ONE free slot
+				if(count >= table.mask) throw new IllegalStateException("The set is full.");
+				var t = table;
+				int reuse = -1, i = hash & t.mask;
+				for(;; i = (i + 1) & t.mask) {
+					var key = t.salt(i);
+					if(key == 0) break;
+					if(key == salt) {
+						t.set(i, salt, now + ttl);
+						return;
+					}
+					if(reuse < 0 && t.deadline(i) - now <= 0) reuse = i;
+				}
+				if(reuse >= 0) {
+					t.set(reuse, salt, now + ttl);
+					return;
+				}
+				t.set(i, salt, now + ttl);
+				if(++count > (t.mask + 1) * LOAD_FACTOR) rebuild(now);
+			}finally {
+				lock.unlockWrite(stamp);
+			}
+		}
+		
+		void remove(long salt, int hash) {
+			var stamp = lock.writeLock();
+			try {
+				var t = table;
+				var i = hash & t.mask;
+				for(;; i = (i + 1) & t.mask) {
+					var key = t.salt(i);
+					if(key == 0) return;
+					if(key == salt) break;
+				}
+				for(int j = (i + 1) & t.mask;; j = (j + 1) & t.mask) {
+					var key = t.salt(j);
+					if(key == 0) break;
+					var home = (int)(hash(key) >>> 32) & t.mask;
+					//Moves the entry j back if its home is not in (i, j]
+					if(((j - home) & t.mask) >= ((j - i) & t.mask)) {
+						t.set(i, key, t.deadline(j));
+						i = j;
+					}
+				}
+				t.set(i, 0L, 0);
+				count--;
+			}finally {
+				lock.unlockWrite(stamp);
+			}
+		}
+		
+		void clear() {
+			var stamp = lock.writeLock();
+			try {
+				table = new Table(table.mask + 1);
+				count = 0;
+			}finally {
+				lock.unlockWrite(stamp);
+			}
+		}
+		
+		//Purges the expired entries and doubles the table if it's still crowded
+		private void rebuild(int now) {
+			var old = table;
+			var live = 0;
+			for(int i = 0; i <= old.mask; i++) {
+				if(old.salt(i) != 0 && old.deadline(i) - now > 0) live++;
+			}
+			var slots = old.mask + 1;
+			if(live > slots * LOAD_FACTOR / 2 && slots < MAX_SLOTS) slots <<= 1;
+			var t = new Table(slots);
+			for(int i = 0; i <= old.mask; i++) {
+				var key = old.salt(i);
+				var deadline = old.deadline(i);
+				if(key == 0 || deadline - now <= 0) continue;
+				var j = (int)(hash(key) >>> 32) & t.mask;
+				while(t.salt(j) != 0) j = (j + 1) & t.mask;
+				t.set(j, key, deadline);
+			}
+			this.count = live;
+			this.table = t;
+		}
+	}
+}
@@ -16,8 +16,14 @@
 
 package cn.techarts.srt.util;
 
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.dbutils.QueryRunner;
 import org.apache.commons.dbutils.handlers.BeanHandler;
@@ -28,43 +34,180 @@ import com.zaxxer.hikari.HikariDataSource;
 
 /**
  * A lightweight utility that's designed to access database 
- * based on APACHE DBUTILS and HIKARI connection pool.
+ * based on APACHE DBUTILS and HIKARI connection pool.<p>
+ * 
+ * The writes always go to the primary. The lookups({@link #lookup(int, String, RowMapper, Object...)}) 
+ * are spread over the read replicas(round robin) if there are, except the rows written 
+ * within the read-your-writes window: a replica may lag behind the primary.
+ * The same holds for the rows deleted within the window({@link #deleted(Object)}), 
+ * e.g. a revoked salt is not found on a lagging replica.
  */
 public final class Persister {
+	private QueryRunner executor = null;
 	private HikariDataSource dataSource = null;
+	private final List<HikariDataSource> replicas = new ArrayList<>();
+	private final AtomicInteger next = new AtomicInteger();
+	private int window = 0; //Seconds
+	private final Map<Object, Long> deletions = new ConcurrentHashMap<>();
+	
+	private static final int MAX_DELETIONS = 4096; //Purged beyond it
+	
+	/**
+	 * Maps the current row by hand(no reflection)
+	 */
+	@FunctionalInterface
+	public interface RowMapper<T> {
+		T map(ResultSet row) throws SQLException;
+	}
 	
 	public Persister(String driver, String url, String user, String token) {
-		this.prepareDataSource(driver, url, user, token);
+		this(driver, url, user, token, null, 0);
+	}
+	
+	/**
+	 * @param replicas The JDBC URLs of the read replicas(the same driver and account)
+	 * @param window The read-your-writes window in seconds: the rows younger than it are read from the primary
+	 */
+	public Persister(String driver, String url, String user, String token, List<String> replicas, int window) {
+		this(driver, url, user, token, replicas, window, null);
+	}
+	
+	/**
+	 * @param pool The HIKARI settings(e.g. maximumPoolSize, connectionTimeout, registerMbeans) and 
+	 * the driver settings with the prefix "dataSource."(e.g. dataSource.useServerPrepStmts). 
+	 * The replicas share them, each pool is named after poolName(default "srt").
+	 */
+	public Persister(String driver, String url, String user, String token, List<String> replicas, int window, Properties pool) {
+		this.window = Math.max(0, window);
+		this.dataSource = prepareDataSource(driver, url, user, token, pool, null);
+		this.executor = new QueryRunner(dataSource); //Thread-safe
+		if(replicas == null) return;
+		for(var replica : replicas) {
+			if(replica == null || replica.isBlank()) continue;
+			var suffix = ".replica" + (this.replicas.size() + 1);
+			this.replicas.add(prepareDataSource(driver, replica.trim(), user, token, pool, suffix));
+		}
 	}
 	
 	public void close() {
+		for(var replica : replicas) replica.close();
 		if(dataSource == null) return;
 		this.dataSource.close(); //Shutdown
 	}
 	
-	private void prepareDataSource(String driver, String url, String user, String token) {
-		var config = new HikariConfig();
+	private static HikariDataSource prepareDataSource(String driver, String url, String user, String token, Properties pool, String suffix) {
+		var config = pool == null ? new HikariConfig() : new HikariConfig(pool);
 		config.setJdbcUrl(url);
 		config.setUsername(user);
 		config.setPassword(token);
 		config.setDriverClassName(driver);
 		//config.setDataSourceClassName(driver);
-		dataSource = new HikariDataSource(config);
+		var name = config.getPoolName() != null ? config.getPoolName() : "srt";
+		config.setPoolName(suffix == null ? name : name + suffix);
+		if(url != null && url.startsWith("jdbc:mysql:")) { //Unless configured
+			var properties = config.getDataSourceProperties();
+			properties.putIfAbsent("cachePrepStmts", "true");
+			properties.putIfAbsent("prepStmtCacheSize", "256");
+			properties.putIfAbsent("prepStmtCacheSqlLimit", "2048");
+		}
+		return new HikariDataSource(config);
 	}
 	
 	public QueryRunner getExecutor() {
-		if(dataSource == null) return null;
-		return new QueryRunner(this.dataSource);
+		return executor;
+	}
+	
+	//---------------------------Metrics of the primary pool---------------------------
+	
+	public int getActiveConnections() {
+		var pool = dataSource.getHikariPoolMXBean();
+		return pool != null ? pool.getActiveConnections() : 0;
+	}
+	
+	public int getIdleConnections() {
+		var pool = dataSource.getHikariPoolMXBean();
+		return pool != null ? pool.getIdleConnections() : 0;
+	}
+	
+	public int getTotalConnections() {
+		var pool = dataSource.getHikariPoolMXBean();
+		return pool != null ? pool.getTotalConnections() : 0;
+	}
+	
+	/**
+	 * The threads blocked on the pool: raise maximumPoolSize if it's often above 0
+	 */
+	public int getThreadsAwaitingConnection() {
+		var pool = dataSource.getHikariPoolMXBean();
+		return pool != null ? pool.getThreadsAwaitingConnection() : 0;
+	}
+	
+	public int getMaximumPoolSize() {
+		return dataSource.getMaximumPoolSize();
+	}
+	
+	public boolean hasReplicas() {
+		return !replicas.isEmpty();
+	}
+	
+	/**
+	 * The read-your-writes window in seconds
+	 */
+	public int getWindow() {
+		return window;
+	}
+	
+	/**
+	 * Records a key(e.g. the revoked salt) deleted on the primary: its lookups should read
+	 * the primary within the window, a lagging replica may still return the row. It's local 
+	 * to the instance, the other instances read the replicas as before.
+	 */
+	public void deleted(Object key) {
+		if(key == null || replicas.isEmpty()) return;
+		var now = System.currentTimeMillis();
+		if(deletions.size() >= MAX_DELETIONS) {
+			deletions.values().removeIf(until -> until <= now);
+		}
+		deletions.put(key, now + window * 1000L);
+	}
+	
+	/**
+	 * @return TRUE if the key was deleted within the window(see {@link #deleted(Object)})
+	 */
+	public boolean isDeleted(Object key) {
+		if(key == null || deletions.isEmpty()) return false;
+		var until = deletions.get(key);
+		if(until == null) return false;
+		if(until > System.currentTimeMillis()) return true;
+		deletions.remove(key, until);
+		return false;
+	}
+	
+	/**
+	 * A cheap check before {@link #isDeleted(Object)}: nothing deleted recently
+	 */
+	public boolean hasDeletions() {
+		return !deletions.isEmpty();
+	}
+	
+	/**
+	 * @param age The seconds since the row was written
+	 * @return The primary if the row may not be replicated yet, otherwise the next replica
+	 */
+	private HikariDataSource route(int age) {
+		if(replicas.isEmpty() || age < window) return dataSource;
+		var index = next.getAndIncrement() & Integer.MAX_VALUE;
+		return replicas.get(index % replicas.size());
 	}
 	
 	/**
 	 * The method is designed to handle the INSERT, UPDATE, DELETE statements 
+	 * @return The number of affected rows
 	 */
 	public int update(String sql, Object... params) throws RuntimeException{
 		if(sql == null) return -1;
 		try {
-			getExecutor().update(sql, params);
-			return 0;
+			return getExecutor().update(sql, params);
 		}catch(SQLException e) {
 			throw new RuntimeException("Failed save data.", e);
 		}
@@ -103,5 +246,70 @@ public final class Persister {
 		}catch(SQLException e) {
 			throw new RuntimeException("Failed to search data with SQL[" + sql + "]", e);
 		}
-	}	
-}
\ No newline at end of file
+	}
+	
+	/**
+	 * The fast path of {@link #get(String, Class, Object...)}: plain JDBC and the row 
+	 * is mapped by hand. The statement is cached by the driver(cachePrepStmts).
+	 * @return NULL if there is no row
+	 */
+	public<T> T get(String sql, RowMapper<T> mapper, Object... params) throws RuntimeException{
+		var result = query(dataSource, sql, mapper, 1, params);
+		return result.isEmpty() ? null : result.get(0);
+	}
+	
+	/**
+	 * The fast path of {@link #getAll(String, Class, Object...)}
+	 */
+	public<T> List<T> getAll(String sql, RowMapper<T> mapper, Object... params) throws RuntimeException{
+		return query(dataSource, sql, mapper, Integer.MAX_VALUE, params);
+	}
+	
+	/**
+	 * The same as {@link #get(String, RowMapper, Object...)} but reads a replica if the row is old enough.
+	 * @param age The seconds since the row was written(Integer.MAX_VALUE if unknown)
+	 */
+	public<T> T lookup(int age, String sql, RowMapper<T> mapper, Object... params) throws RuntimeException{
+		var result = query(route(age), sql, mapper, 1, params);
+		return result.isEmpty() ? null : result.get(0);
+	}
+	
+	/**
+	 * The same as {@link #getAll(String, RowMapper, Object...)} but reads a replica if the rows are old enough.
+	 * @param age The seconds since the youngest row was written(Integer.MAX_VALUE if unknown)
+	 */
+	public<T> List<T> lookupAll(int age, String sql, RowMapper<T> mapper, Object... params) throws RuntimeException{
+		return query(route(age), sql, mapper, Integer.MAX_VALUE, params);
+	}
+	
+	private static<T> List<T> query(HikariDataSource source, String sql, RowMapper<T> mapper, int max, Object... params) {
+		if(sql == null || mapper == null) return List.of();
+		try(var connection = source.getConnection();
+			var statement = connection.prepareStatement(sql)){
+			for(int i = 0; params != null && i < params.length; i++) {
+				statement.setObject(i + 1, params[i]);
+			}
+			try(var rows = statement.executeQuery()){
+				var result = new ArrayList<T>(max == 1 ? 1 : 16);
+				while(result.size() < max && rows.next()) {
+					result.add(mapper.map(rows));
+				}
+				return result;
+			}
+		}catch(SQLException e) {
+			throw new RuntimeException("Failed to search data with SQL[" + sql + "]", e);
+		}
+	}
+	
+	/**
+	 * The parameter list of an IN clause, e.g. (?,?,?)
+	 */
+	public static String placeholders(int count) {
+		if(count <= 0) throw new IllegalArgumentException("At least 1 parameter.");
+		var result = new StringBuilder(count * 2 + 1).append('(');
+		for(int i = 0; i < count; i++) {
+			result.append(i == 0 ? "?" : ",?");
+		}
+		return result.append(')').toString();
+	}
+}
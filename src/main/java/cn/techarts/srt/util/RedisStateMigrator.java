@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.util;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.params.ScanParams;
+
+/**
+ * Converts the text micro-states into the compact(binary) ones in place:<br>
+ * PSS: uid -> {decimal salt: hex hash} becomes uid -> {8-byte salt: raw hash}<br>
+ * GWM: decimal salt -> "0" becomes 8-byte salt -> empty value<p>
+ * The TTLs are kept. The states are migrated key by key, so the tokenizers can keep
+ * running(the not yet migrated tokens are rejected until their turn). It scans the
+ * database of a standalone server, please run it against each master of a cluster.
+ * The tokenizers use the database 1 of a standalone server and 0 of a cluster(the
+ * only one there): a cluster node is detected and migrated in the database 0.<p>
+ * Usage: java cn.techarts.srt.util.RedisStateMigrator host port PSS|GWM [database]
+ */
+public final class RedisStateMigrator {
+	private static final int SCAN_COUNT = 1000;
+	private static final byte[] PRESENT = new byte[0];
+
+	public static void main(String[] args) {
+		if(args == null || args.length < 3) {
+			System.out.println("Usage: RedisStateMigrator host port PSS|GWM [database]");
+			return;
+		}
+		Cacher.initConnectionPool(args[0], Integer.parseInt(args[1]), 4);
+		try {
+			var database = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+			if(database != 0 && isClusterNode()) {
+				System.out.println("A cluster node: the states are migrated in the database 0.");
+				database = 0;
+			}
+			var pss = "PSS".equalsIgnoreCase(args[2]);
+			var result = pss ? migratePss(database) : migrateGwm(database);
+			System.out.println("Migrated " + result + " states.");
+		}finally {
+			Cacher.destroy();
+		}
+	}
+	
+	/**
+	 * A cluster node rejects SELECT, so it's asked in the database 0.
+	 */
+	private static boolean isClusterNode() {
+		try(Jedis connection = Cacher.getConnection(0)){
+			return connection != null && isClusterEnabled(connection.info("cluster"));
+		}
+	}
+	
+	/**
+	 * @param info The reply of INFO cluster
+	 */
+	static boolean isClusterEnabled(String info) {
+		return info != null && info.contains("cluster_enabled:1");
+	}
+
+	/**
+	 * @return The number of migrated fields
+	 */
+	public static long migratePss(int cache) {
+		long result = 0;
+		try(Jedis connection = Cacher.getConnection(cache)){
+			var cursor = ScanParams.SCAN_POINTER_START_BINARY;
+			var params = new ScanParams().count(SCAN_COUNT);
+			do {
+				var page = connection.scan(cursor, params);
+				for(var key : page.getResult()) {
+					if(!"hash".equals(connection.type(key))) continue;
+					for(var field : connection.hgetAll(key).entrySet()) {
+						var salt = toSalt(field.getKey());
+						var hash = toHash(field.getValue());
+						if(salt == 0 || hash == null) continue; //Migrated
+						connection.hset(key, Converter.toBytes(salt), hash);
+						connection.hdel(key, field.getKey());
+						result++;
+					}
+				}
+				cursor = page.getCursorAsBytes();
+			}while(!isStart(cursor));
+		}
+		return result;
+	}
+
+	/**
+	 * @return The number of migrated salts
+	 */
+	public static long migrateGwm(int cache) {
+		long result = 0;
+		try(Jedis connection = Cacher.getConnection(cache)){
+			var cursor = ScanParams.SCAN_POINTER_START_BINARY;
+			var params = new ScanParams().count(SCAN_COUNT);
+			do {
+				var page = connection.scan(cursor, params);
+				for(var key : page.getResult()) {
+					var salt = toSalt(key);
+					if(salt == 0) continue; //Migrated or unknown
+					if(!"string".equals(connection.type(key))) continue;
+					var value = connection.get(key);
+					if(value == null || value.length == 0) continue; //Not "0"
+					var ttl = connection.ttl(key);
+					if(ttl == -2) continue; //Expired
+					var target = Converter.toBytes(salt);
+					if(ttl > 0) {
+						connection.setex(target, ttl, PRESENT);
+					}else {
+						connection.set(target, PRESENT);
+					}
+					connection.del(key);
+					result++;
+				}
+				cursor = page.getCursorAsBytes();
+			}while(!isStart(cursor));
+		}
+		return result;
+	}
+
+	/**
+	 * @return The salt of a decimal text, or 0 if it's not(e.g. an 8-byte binary salt)
+	 */
+	static long toSalt(byte[] text) {
+		if(text == null || text.length == 0 || text.length > 19) return 0;
+		long result = 0;
+		for(var b : text) {
+			if(b < '0' || b > '9') return 0;
+			result = result * 10 + (b - '0');
+		}
+		return result < 0 ? 0 : result;
+	}
+
+	/**
+	 * @return The raw hash of a hex text, or null if it's not
+	 */
+	static byte[] toHash(byte[] text) {
+		if(text == null || text.length < 32 || (text.length & 1) != 0) return null;
+		for(var b : text) {
+			var hex = (b >= '0' && b <= '9') || (b >= 'a' && b <= 'f') || (b >= 'A' && b <= 'F');
+			if(!hex) return null;
+		}
+		return Cryptor.toBytes(new String(text));
+	}
+
+	private static boolean isStart(byte[] cursor) {
+		return cursor.length == 1 && cursor[0] == '0';
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded in-process set of whitelisted salts(GWM near-cache).<p>
+ *
+ * It's direct-mapped and keyed by the primitive salt: ONE slot per hash bucket,
+ * a colliding salt simply replaces the former. Only positive entries are kept
+ * and each of them expires after the TTL, so a revocation missed by this node
+ * is visible at most TTL later. The salt 0 is never issued and marks a free slot.<p>
+ * Every invalidation bumps the version of the slot(a clear bumps all), so a salt 
+ * looked up before a revocation is not cached after it({@link #put(long, long)}).
+ */
+public final class SaltCache implements SaltSet {
+	private final int shift;
+	private final long ttl; //Nanoseconds
+	private final long[] salts;
+	private final long[] deadlines;
+	private final long[] versions;
+	private volatile long epoch; //Bumped by clear
+
+	private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+	/**
+	 * @param capacity The number of slots(rounded up to a power of 2)
+	 * @param ttl The time to live of an entry in seconds
+	 */
+	public SaltCache(int capacity, int ttl) {
+		if(capacity <= 0 || ttl <= 0) {
+			throw new IllegalArgumentException("Illegal capacity or TTL.");
+		}
+		var bits = 32 - Integer.numberOfLeadingZeros(Math.max(capacity, 2) - 1);
+		this.shift = 64 - bits;
+		this.salts = new long[1 << bits];
+		this.deadlines = new long[1 << bits];
+		this.versions = new long[1 << bits];
+		this.ttl = TimeUnit.SECONDS.toNanos(ttl);
+	}
+
+	public int capacity() {
+		return salts.length;
+	}
+
+	@Override
+	public boolean contains(long salt) {
+		if(salt == 0) return false;
+		var i = index(salt);
+		if((long)SLOTS.getAcquire(salts, i) != salt) return false;
+		return deadlines[i] - System.nanoTime() > 0;
+	}
+
+	@Override
+	public void put(long salt) {
+		if(salt == 0) return;
+		var i = index(salt);
+		deadlines[i] = System.nanoTime() + ttl;
+		SLOTS.setRelease(salts, i, salt); //Publishes the deadline as well
+	}
+
+	@Override
+	public long stamp(long salt) {
+		return (long)SLOTS.getVolatile(versions, index(salt)) + epoch;
+	}
+	
+	/**
+	 * The salt is published first and the stamp checked after, an invalidation bumps 
+	 * the version first and clears the slot after: one of them sees the other.
+	 */
+	@Override
+	public void put(long salt, long stamp) {
+		if(salt == 0) return;
+		var i = index(salt);
+		if((long)SLOTS.getVolatile(versions, i) + epoch != stamp) return;
+		deadlines[i] = System.nanoTime() + ttl;
+		SLOTS.setVolatile(salts, i, salt);
+		if((long)SLOTS.getVolatile(versions, i) + epoch == stamp) return;
+		SLOTS.compareAndSet(salts, i, salt, 0L); //Invalidated in between
+	}
+
+	@Override
+	public void invalidate(long salt) {
+		if(salt == 0) return;
+		var i = index(salt);
+		SLOTS.getAndAdd(versions, i, 1L);
+		SLOTS.compareAndSet(salts, i, salt, 0L);
+	}
+
+	@Override
+	public void clear() {
+		epoch++; //Only the listener clears
+		Arrays.fill(salts, 0L);
+	}
+
+	//Fibonacci hashing: the high bits of the product
+	private int index(long salt) {
+		return (int)((salt * 0x9E3779B97F4A7C15L) >>> shift);
+	}
+}
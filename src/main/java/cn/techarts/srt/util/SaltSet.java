@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.util;
+
+/**
+ * A set of whitelisted salts(GWM). The salt 0 is never issued and never contained.
+ */
+public interface SaltSet {
+	public boolean contains(long salt);
+	
+	/**
+	 * Adds the salt with the default time to live of the set
+	 */
+	public void put(long salt);
+	
+	/**
+	 * A stamp of the salt taken BEFORE the whitelist is looked up, see {@link #put(long, long)}
+	 */
+	public default long stamp(long salt) {
+		return 0;
+	}
+	
+	/**
+	 * Adds the salt unless it was invalidated since the stamp was taken: 
+	 * a lookup racing with a revocation must not cache the revoked salt.
+	 */
+	public default void put(long salt, long stamp) {
+		put(salt);
+	}
+	
+	public void invalidate(long salt);
+	
+	public void clear();
+}
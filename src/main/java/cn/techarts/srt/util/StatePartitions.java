@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import cn.techarts.srt.core.MicroState;
+import cn.techarts.srt.core.SRToken;
+
+/**
+ * Maintains the daily RANGE partitions of srt_token_state(schema-partitioned.sql) on a daemon thread.<p>
+ * A partition holds the states issued in one day(column issued: seconds since 2020, the timestamp 
+ * of the token). The partitions of the next days are split off the catch-all partition pmax in 
+ * advance, and a partition is dropped as a whole once its youngest token expired(the lifetime), 
+ * which takes no row locks and leaves no garbage behind. No {@link StateSweeper} is required.
+ */
+public final class StatePartitions {
+	private volatile boolean closed;
+	private final int ahead;
+	private final int lifetime;
+	private final long interval;
+	private final Persister persister;
+	private Thread worker = null;
+	
+	private final LongAdder created = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	
+	public static final int DAY = 86400;
+	public static final String CATCH_ALL = "pmax";
+	
+	/**
+	 * The max seconds between the timestamp of a token and the column issued of its row
+	 */
+	public static final int SKEW = 300;
+	
+	/**
+	 * The range of the column issued which covers the tokens of the keys
+	 * @return {from, to} or null if a timestamp is unknown(all partitions are read)
+	 */
+	public static int[] range(List<MicroState> keys) {
+		int from = Integer.MAX_VALUE, to = 0;
+		for(var key : keys) {
+			var timestamp = key.getTimestamp();
+			if(timestamp <= 0) return null;
+			from = Math.min(from, timestamp);
+			to = Math.max(to, timestamp);
+		}
+		return new int[] {from - SKEW, to + SKEW};
+	}
+	
+	private static final String PARTITIONS = "select partition_name, partition_description from information_schema.partitions "
+										   + "where table_schema=database() and table_name='srt_token_state' and partition_name is not null";
+	private static final String SPLIT = "alter table srt_token_state reorganize partition pmax into (%s, partition pmax values less than maxvalue)";
+	private static final String DROP = "alter table srt_token_state drop partition %s";
+	
+	/**
+	 * @param lifetime The max lifetime(seconds) of a token, please see {@link cn.techarts.srt.core.Configuration#getLifetime()}
+	 * @param ahead The partitions created in advance(days)
+	 * @param interval Seconds between two rounds
+	 */
+	public StatePartitions(Persister persister, int lifetime, int ahead, int interval) {
+		if(lifetime <= 0) throw new IllegalArgumentException("The lifetime is required.");
+		this.lifetime = lifetime;
+		this.persister = persister;
+		this.ahead = ahead > 0 ? ahead : 3;
+		this.interval = (interval > 0 ? interval : 3600) * 1000L;
+	}
+	
+	public synchronized StatePartitions start() {
+		if(worker != null || closed) return this;
+		worker = new Thread(this::run, "srt.partitions");
+		worker.setDaemon(true);
+		worker.start();
+		return this;
+	}
+	
+	/**
+	 * Creates the missing partitions and drops the expired ones.
+	 * @param now Seconds since 2020(see {@link SRToken#seconds2020()})
+	 * @return The number of created and dropped partitions
+	 */
+	public synchronized int maintain(int now) {
+		var bounds = new TreeMap<String, Long>();
+		var rows = persister.getAll(PARTITIONS, row -> new Object[] {row.getString(1), row.getString(2)});
+		for(var row : rows) {
+			var bound = (String)row[1];
+			if(CATCH_ALL.equals(row[0]) || bound == null) continue;
+			bounds.put((String)row[0], Long.parseLong(bound.trim()));
+		}
+		var missing = missing(bounds, now, ahead);
+		if(!missing.isEmpty()) {
+			var partitions = new ArrayList<String>(missing.size());
+			for(var day : missing) {
+				partitions.add("partition " + toName(day) + " values less than (" + upperBound(day) + ")");
+			}
+			persister.update(String.format(SPLIT, String.join(", ", partitions)));
+			created.add(missing.size());
+		}
+		var expired = expired(bounds, now, lifetime);
+		if(!expired.isEmpty()) {
+			persister.update(String.format(DROP, String.join(",", expired)));
+			dropped.add(expired.size());
+		}
+		return missing.size() + expired.size();
+	}
+	
+	/**
+	 * The days(since 2020) from today to today + ahead without a partition
+	 */
+	static List<Integer> missing(Map<String, Long> bounds, int now, int ahead) {
+		var result = new ArrayList<Integer>(ahead + 1);
+		long last = 0; //The partitions are split off pmax in order
+		for(var bound : bounds.values()) last = Math.max(last, bound);
+		for(int day = now / DAY, end = day + ahead; day <= end; day++) {
+			if(upperBound(day) > last) result.add(day);
+		}
+		return result;
+	}
+	
+	/**
+	 * The partitions whose youngest token expired: upper bound + lifetime <= now
+	 */
+	static List<String> expired(Map<String, Long> bounds, int now, int lifetime) {
+		var result = new ArrayList<String>();
+		for(var entry : bounds.entrySet()) {
+			if(entry.getValue() + lifetime <= now) result.add(entry.getKey());
+		}
+		return result;
+	}
+	
+	static String toName(int day) {
+		return "p" + day;
+	}
+	
+	static long upperBound(int day) {
+		return (long)(day + 1) * DAY;
+	}
+	
+	private void run() {
+		while(!closed) {
+			try {
+				maintain(SRToken.seconds2020());
+			}catch(RuntimeException e) {
+				//Try again in the next round
+			}
+			try {
+				Thread.sleep(interval);
+			}catch(InterruptedException e) {
+				break;
+			}
+		}
+	}
+	
+	public synchronized void close() {
+		closed = true;
+		if(worker != null) worker.interrupt();
+	}
+	
+	public long getCreated() {
+		return created.sum();
+	}
+	
+	public long getDropped() {
+		return dropped.sum();
+	}
+}
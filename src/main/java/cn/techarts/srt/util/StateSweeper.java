@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.util;
+
+/**
+ * Deletes the expired rows of srt_token_state on a daemon thread.<p>
+ * The rows are deleted in small batches(DELETE ... LIMIT), so a sweep never holds
+ * many locks or a long transaction. It requires an index on the column expiry, which
+ * also keeps the table compact: the rows of the expired tokens do not pile up.
+ * The rows with expiry 0 never expire.
+ */
+public final class StateSweeper {
+	private volatile boolean closed;
+	private final int batch;
+	private final long interval;
+	private final Persister persister;
+	private Thread worker = null;
+
+	private static final String SWEEP = "delete from srt_token_state where expiry between 1 and ? limit ?";
+
+	/**
+	 * @param interval Seconds between two sweeps
+	 * @param batch The max rows deleted by one statement
+	 */
+	public StateSweeper(Persister persister, int interval, int batch) {
+		this.persister = persister;
+		this.batch = batch > 0 ? batch : 1000;
+		this.interval = (interval > 0 ? interval : 60) * 1000L;
+	}
+
+	public synchronized StateSweeper start() {
+		if(worker != null || closed) return this;
+		worker = new Thread(this::run, "srt.sweeper");
+		worker.setDaemon(true);
+		worker.start();
+		return this;
+	}
+
+	/**
+	 * Deletes the rows expired before the time batch by batch.
+	 * @param now Epoch seconds
+	 * @return The number of deleted rows
+	 */
+	public int sweep(long now) {
+		int result = 0;
+		while(!closed) {
+			var deleted = persister.update(SWEEP, now, batch);
+			if(deleted <= 0) break;
+			result += deleted;
+			if(deleted < batch) break;
+		}
+		return result;
+	}
+
+	private void run() {
+		while(!closed) {
+			try {
+				Thread.sleep(interval);
+				sweep(System.currentTimeMillis() / 1000);
+			}catch(InterruptedException e) {
+				break;
+			}catch(RuntimeException e) { //Try again in the next round
+				continue;
+			}
+		}
+	}
+
+	public synchronized void close() {
+		closed = true;
+		if(worker != null) worker.interrupt();
+	}
+}
@@ -18,17 +18,33 @@ package cn.techarts.srt.web;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 import javax.servlet.annotation.WebListener;
 
+import cn.techarts.srt.RevocationMode;
 import cn.techarts.srt.core.Configuration;
+import cn.techarts.srt.impl.GwmMysqlBasedTokenizer;
+import cn.techarts.srt.impl.GwmRedisBasedTokenizer;
+import cn.techarts.srt.impl.MappedStateFile;
+import cn.techarts.srt.impl.PssMysqlBasedTokenizer;
+import cn.techarts.srt.impl.RevocationGuard;
+import cn.techarts.srt.impl.WriteBehind;
+import cn.techarts.srt.util.AsyncCacher;
 import cn.techarts.srt.util.Cacher;
+import cn.techarts.srt.util.OffHeapLongSet;
 import cn.techarts.srt.util.Persister;
+import cn.techarts.srt.util.SaltCache;
+import cn.techarts.srt.util.StatePartitions;
+import cn.techarts.srt.util.StateSweeper;
 
 /**
  * Application Lifecycle Listener implementation class InitListener
@@ -36,6 +52,9 @@ import cn.techarts.srt.util.Persister;
  */
 @WebListener
 public class SRTInitListener implements ServletContextListener {
+	private static final String POOL = "jdbc.pool.";
+	private static final String WRITE_BEHIND_MBEAN = "cn.techarts.srt:type=WriteBehind";
+	
     /**
      * Default constructor. 
      */
@@ -47,7 +66,21 @@ public class SRTInitListener implements ServletContextListener {
      * @see ServletContextListener#contextDestroyed(ServletContextEvent)
      */
     public void contextDestroyed(ServletContextEvent sce)  { 
-         // TODO Auto-generated method stub
+    	var file = sce.getServletContext().getAttribute(SRTServlet.KEY_STATE_FILE);
+    	if(file != null) ((MappedStateFile)file).close();
+    	var sweeper = sce.getServletContext().getAttribute(SRTServlet.KEY_SWEEPER);
+    	if(sweeper != null) ((StateSweeper)sweeper).close();
+    	var partitions = sce.getServletContext().getAttribute(SRTServlet.KEY_PARTITIONS);
+    	if(partitions != null) ((StatePartitions)partitions).close();
+    	var buffer = sce.getServletContext().getAttribute(SRTServlet.KEY_WRITE_BEHIND);
+    	if(buffer != null) {
+    		((WriteBehind)buffer).close();
+    		unregisterMBean(WRITE_BEHIND_MBEAN);
+    	}
+    	var persister = sce.getServletContext().getAttribute(SRTServlet.KEY_PERSISTER);
+    	if(persister != null) ((Persister)persister).close();
+    	AsyncCacher.destroy();
+    	Cacher.destroy();
     }
 
 	/**
@@ -58,33 +91,188 @@ public class SRTInitListener implements ServletContextListener {
     	var config = resolveProperties(path);
     	var storage = config.get("src.storage");
     	
+    	var key = config.get("srt.key");
+    	var cuc = config.get("srt.cuc");
+    	var expand = config.get("srt.expand");
+    	var duration = config.get("srt.duration");
+    	var revocationMode = config.get("srt.revocationMode");
+    	var validationMode = config.get("srt.validationMode");
+    	var settings = new Configuration(key, duration, expand, cuc, revocationMode, validationMode);
+    	var hashLength = config.get("srt.hashLength");
+    	if(hashLength != null && !hashLength.isBlank()) {
+    		settings.setHashLength(Integer.parseInt(hashLength.trim()));
+    	}
+    	
+    	var pubsub = false; //Revocations are broadcast via REDIS
     	if("rdbms".equalsIgnoreCase(storage)) {
 	    	var url = config.get("jdbc.url");
 	    	var driver = config.get("jdbc.driver");
 	    	var user = config.get("jdbc.user");
 	    	var password = config.get("jdbc.password");
-	    	var persister = new Persister(driver, url, user, password);
+	    	var replicas = config.getOrDefault("jdbc.replicas", "");
+	    	var window = config.getOrDefault("jdbc.replica.window", "2");
+	    	var persister = new Persister(driver, url, user, password, Arrays.asList(replicas.split(",")), 
+	    								  Integer.parseInt(window.trim()), resolvePool(config));
 	    	sce.getServletContext().setAttribute("srt.persister", persister);
+	    	var partitioned = "true".equalsIgnoreCase(config.get("jdbc.partitioned"));
+	    	if(partitioned) { //Expired by dropping the partitions
+	    		var ahead = config.getOrDefault("jdbc.partitions.ahead", "3");
+	    		var interval = config.getOrDefault("jdbc.partitions.interval", "3600");
+	    		var partitions = new StatePartitions(persister, settings.getLifetime(), 
+	    											 Integer.parseInt(ahead.trim()), Integer.parseInt(interval.trim()));
+	    		sce.getServletContext().setAttribute(SRTServlet.KEY_PARTITIONS, partitions.start());
+	    	}else {
+		    	var interval = config.getOrDefault("jdbc.sweep.interval", "60");
+		    	var batch = config.getOrDefault("jdbc.sweep.batch", "1000");
+		    	var sweeper = new StateSweeper(persister, Integer.parseInt(interval.trim()), Integer.parseInt(batch.trim()));
+		    	sce.getServletContext().setAttribute(SRTServlet.KEY_SWEEPER, sweeper.start());
+	    	}
+	    	var buffer = initWriteBehind(config, settings, persister, partitioned);
+	    	if(buffer != null) {
+	    		registerMBean(WRITE_BEHIND_MBEAN, buffer);
+	    		sce.getServletContext().setAttribute(SRTServlet.KEY_WRITE_BEHIND, buffer.start());
+	    	}
+    	}else if("file".equalsIgnoreCase(storage)) {
+    		var sync = "true".equalsIgnoreCase(config.get("file.sync"));
+    		var file = new MappedStateFile(config.get("file.path"), sync);
+    		sce.getServletContext().setAttribute(SRTServlet.KEY_STATE_FILE, file);
+    	}else if("memory".equalsIgnoreCase(storage)) {
+    		var whitelist = initWhitelist(config, settings);
+    		sce.getServletContext().setAttribute(SRTServlet.KEY_WHITELIST, whitelist);
     	}else if("redis".equalsIgnoreCase("redis")){
     		var host = config.get("redis.host");
     		var port = config.get("redis.port");
-    		Cacher.init(host, port, config.get("redis.connections"));
+    		var cluster = config.get("redis.cluster");
+    		if(cluster != null && !cluster.isBlank()) {
+    			var max = config.getOrDefault("redis.connections", "20");
+    			Cacher.initCluster(cluster, Integer.parseInt(max.trim()));
+    		}else {
+    			Cacher.init(host, port, config.get("redis.connections"));
+    		}
+    		var async = config.get("redis.async.connections");
+    		if(async != null && !async.isBlank()) {
+    			AsyncCacher.init(Integer.parseInt(async.trim()));
+    		}
+    		if("true".equalsIgnoreCase(config.get("redis.compact"))) {
+    			sce.getServletContext().setAttribute(SRTServlet.KEY_COMPACT, Boolean.TRUE);
+    		}
+    		if("true".equalsIgnoreCase(config.get("redis.scripts"))) {
+    			sce.getServletContext().setAttribute(SRTServlet.KEY_SCRIPTED, Boolean.TRUE);
+    		}
+    		pubsub = true;
+    		var nearCache = initNearCache(config);
+    		if(nearCache != null) {
+    			GwmRedisBasedTokenizer.listen(nearCache);
+    			sce.getServletContext().setAttribute(SRTServlet.KEY_NEAR_CACHE, nearCache);
+    		}
     	}else {
     		throw new RuntimeException("Unsupported storage: " + storage);
     	}
     	
-    	var key = config.get("srt.key");
-    	var cuc = config.get("srt.cuc");
-    	var expand = config.get("srt.expand");
-    	var duration = config.get("srt.duration");
-    	var revocationMode = config.get("srt.revocationMode");
-    	var validationMode = config.get("srt.validationMode");
-    	var settings = new Configuration(key, cuc, duration, expand, revocationMode, validationMode);
+    	var guard = initGuard(config, settings, pubsub);
+    	if(guard != null) {
+    		if(pubsub) guard.listen();
+    		sce.getServletContext().setAttribute(SRTServlet.KEY_GUARD, guard);
+    	}
     	sce.getServletContext().setAttribute("srt.configuration", settings);
     }
+    /**
+     * The INSERTs are buffered for the window(milliseconds, 0 disables it) and flushed in batches.
+     */
+    private static WriteBehind initWriteBehind(Map<String, String> config, Configuration settings, Persister persister, boolean partitioned) {
+    	var window = config.getOrDefault("jdbc.writeBehind.window", "0");
+    	if(window.isBlank() || Integer.parseInt(window.trim()) <= 0) return null;
+    	var batch = config.getOrDefault("jdbc.writeBehind.batch", "500");
+    	var w = Integer.parseInt(window.trim());
+    	var b = Integer.parseInt(batch.trim());
+    	var capacity = config.getOrDefault("jdbc.writeBehind.capacity", "100000");
+    	var c = Integer.parseInt(capacity.trim());
+    	var mode = settings.toRevocationMode();
+    	if(RevocationMode.PSS.equals(mode)) {
+    		return PssMysqlBasedTokenizer.newWriteBehind(persister, w, b, c, partitioned);
+    	}else if(RevocationMode.GWM.equals(mode)) {
+    		return GwmMysqlBasedTokenizer.newWriteBehind(persister, w, b, c, partitioned);
+    	}
+    	return null; //UCM is stateless
+    }
+    
+    /**
+     * Publishes the metrics next to the HIKARI pool beans(a previous deployment's bean is replaced)
+     */
+    private static void registerMBean(String name, Object bean) {
+    	try {
+    		var server = ManagementFactory.getPlatformMBeanServer();
+    		var target = new ObjectName(name);
+    		if(server.isRegistered(target)) server.unregisterMBean(target);
+    		server.registerMBean(bean, target);
+    	}catch(JMException e) {
+    		throw new RuntimeException("Failed to register the MBean " + name, e);
+    	}
+    }
+    
+    private static void unregisterMBean(String name) {
+    	try {
+    		var server = ManagementFactory.getPlatformMBeanServer();
+    		var target = new ObjectName(name);
+    		if(server.isRegistered(target)) server.unregisterMBean(target);
+    	}catch(JMException e) {
+    		return; //Gone already
+    	}
+    }
+    
+    /**
+     * The embedded GWM whitelist. A salt lives as long as the token(extended).
+     */
+    private static OffHeapLongSet initWhitelist(Map<String, String> config, Configuration settings) {
+    	var expected = config.getOrDefault("srt.whitelist.capacity", "1000000");
+    	return new OffHeapLongSet(Long.parseLong(expected.trim()), settings.getLifetime());
+    }
+    
+    /**
+     * The revocation guard, disabled if the capacity is absent or 0. Without the broadcast 
+     * the positive cache would accept the salts revoked by other nodes, so it's disabled.
+     */
+    private static RevocationGuard initGuard(Map<String, String> config, Configuration settings, boolean broadcast) {
+    	var capacity = config.get("srt.guard.capacity");
+    	if(capacity == null || capacity.isBlank()) return null;
+    	var revoked = Integer.parseInt(capacity.trim());
+    	if(revoked <= 0) return null;
+    	var positives = config.getOrDefault("srt.guard.positives", "65536");
+    	var ttl = config.getOrDefault("srt.guard.ttl", "30");
+    	var seconds = broadcast ? Integer.parseInt(ttl.trim()) : 0;
+    	return new RevocationGuard(revoked, settings.getLifetime(), Integer.parseInt(positives.trim()), seconds);
+    }
+    
+    /**
+     * GWM near-cache, disabled if the TTL is absent or 0
+     */
+    private static SaltCache initNearCache(Map<String, String> config) {
+    	var ttl = config.get("srt.nearCache.ttl");
+    	if(ttl == null || ttl.isBlank()) return null;
+    	var seconds = Integer.parseInt(ttl.trim());
+    	if(seconds <= 0) return null;
+    	var capacity = config.getOrDefault("srt.nearCache.capacity", "65536");
+    	return new SaltCache(Integer.parseInt(capacity.trim()), seconds);
+    }
+    
     /**
 	 * Properties configuration
 	 */
+	/**
+	 * The section "jdbc.pool." without the prefix(blank values are ignored)
+	 */
+	private static Properties resolvePool(Map<String, String> config) {
+		var result = new Properties();
+		for(var entry : config.entrySet()) {
+			var key = entry.getKey();
+			if(!key.startsWith(POOL) || key.length() == POOL.length()) continue;
+			var value = entry.getValue();
+			if(value == null || value.isBlank()) continue;
+			result.setProperty(key.substring(POOL.length()), value.trim());
+		}
+		return result;
+	}
+	
 	private static Map<String, String> resolveProperties(String file) {
 		var config = new Properties();
 		var result = new HashMap<String, String>(64);
@@ -30,7 +30,9 @@ public class SRTIssuranceServlet extends SRTServlet {
 		var ctx = request.getServletContext();
 		var config = (Configuration)ctx.getAttribute(KEY_CONFIG);
 		var tokenizer = initSRTokenizer(config.toRevocationMode(), ctx);
-		response.getWriter().write(tokenizer.issue(session, config, null));
+		var token = getTokenBuffer();
+		var length = tokenizer.issue(session, config, null, token, 0);
+		response.getWriter().write(token, 0, length);
 	}
 	
 	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
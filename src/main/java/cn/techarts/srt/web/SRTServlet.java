@@ -22,19 +22,48 @@ import javax.servlet.http.HttpServletRequest;
 
 import cn.techarts.srt.RevocationMode;
 import cn.techarts.srt.SRTokenizer;
+import cn.techarts.srt.core.Configuration;
 import cn.techarts.srt.core.Session;
+import cn.techarts.srt.impl.GwmCompactRedisTokenizer;
+import cn.techarts.srt.impl.GwmMemoryBasedTokenizer;
 import cn.techarts.srt.impl.GwmMysqlBasedTokenizer;
+import cn.techarts.srt.impl.GuardedTokenizer;
 import cn.techarts.srt.impl.GwmRedisBasedTokenizer;
+import cn.techarts.srt.impl.MappedStateFile;
+import cn.techarts.srt.impl.PssCompactRedisTokenizer;
+import cn.techarts.srt.impl.PssFileBasedTokenizer;
 import cn.techarts.srt.impl.PssMysqlBasedTokenizer;
 import cn.techarts.srt.impl.PssRedisBasedTokenizer;
+import cn.techarts.srt.impl.RevocationGuard;
 import cn.techarts.srt.impl.UcmSRTokenizer;
+import cn.techarts.srt.impl.WriteBehind;
+import cn.techarts.srt.util.OffHeapLongSet;
 import cn.techarts.srt.util.Persister;
+import cn.techarts.srt.util.SaltSet;
 
 public class SRTServlet extends HttpServlet{
 	public static final String URL_ISSUE = "/src/issue";
 	public static final String URL_VERIFY = "/src/verify";
 	public static final String KEY_PERSISTER = "srt.persister";
 	public static final String KEY_CONFIG = "srt.configuration";
+	public static final String KEY_NEAR_CACHE = "srt.nearCache";
+	public static final String KEY_WHITELIST = "srt.whitelist";
+	public static final String KEY_STATE_FILE = "srt.stateFile";
+	public static final String KEY_GUARD = "srt.guard";
+	public static final String KEY_SCRIPTED = "srt.scripted";
+	public static final String KEY_SWEEPER = "srt.sweeper";
+	public static final String KEY_COMPACT = "srt.compact";
+	public static final String KEY_WRITE_BEHIND = "srt.writeBehind";
+	public static final String KEY_PARTITIONS = "srt.partitions";
+	
+	/**
+	 * Tokens are written from here to the response without building a String
+	 */
+	private static final ThreadLocal<char[]> TOKENS = ThreadLocal.withInitial(() -> new char[2048]);
+	
+	protected char[] getTokenBuffer() {
+		return TOKENS.get();
+	}
 	
 	protected Session getSession(HttpServletRequest request) {
 		var ip = request.getParameter("ip");
@@ -43,31 +72,62 @@ public class SRTServlet extends HttpServlet{
 		return new Session(uid, ip, ua);
 	}
 	
+	/**
+	 * The micro-states expire after the max lifetime of a token
+	 */
+	protected int getStateTTL(ServletContext ctx) {
+		var config = (Configuration)ctx.getAttribute(KEY_CONFIG);
+		return config != null ? config.getLifetime() : 0;
+	}
+	
 	protected SRTokenizer initPssTokenizer(ServletContext ctx) {
+		var file = ctx.getAttribute(KEY_STATE_FILE);
+		if(file != null) {
+			return new PssFileBasedTokenizer((MappedStateFile)file);
+		}
+		var ttl = getStateTTL(ctx);
 		var persister = ctx.getAttribute(KEY_PERSISTER);
 		if(persister == null) {
-			return new PssRedisBasedTokenizer();
+			var scripted = ctx.getAttribute(KEY_SCRIPTED) != null;
+			if(ctx.getAttribute(KEY_COMPACT) != null) {
+				return new PssCompactRedisTokenizer(scripted, ttl);
+			}
+			return new PssRedisBasedTokenizer(scripted, ttl);
 		}else {
-			return new PssMysqlBasedTokenizer((Persister)persister);
+			var buffer = (WriteBehind)ctx.getAttribute(KEY_WRITE_BEHIND);
+			var partitioned = ctx.getAttribute(KEY_PARTITIONS) != null;
+			return new PssMysqlBasedTokenizer((Persister)persister, ttl, buffer, partitioned);
 		}
 	}
 	
 	protected SRTokenizer initGwmTokenizer(ServletContext ctx) {
+		var whitelist = ctx.getAttribute(KEY_WHITELIST);
+		if(whitelist != null) {
+			return new GwmMemoryBasedTokenizer((OffHeapLongSet)whitelist);
+		}
+		var ttl = getStateTTL(ctx);
 		var persister = ctx.getAttribute(KEY_PERSISTER);
 		if(persister == null) {
-			return new GwmRedisBasedTokenizer();
+			var nearCache = ctx.getAttribute(KEY_NEAR_CACHE);
+			if(ctx.getAttribute(KEY_COMPACT) != null) {
+				return new GwmCompactRedisTokenizer((SaltSet)nearCache, ttl);
+			}
+			return new GwmRedisBasedTokenizer((SaltSet)nearCache, ttl);
 		}else {
-			return new GwmMysqlBasedTokenizer((Persister)persister);
+			var buffer = (WriteBehind)ctx.getAttribute(KEY_WRITE_BEHIND);
+			var partitioned = ctx.getAttribute(KEY_PARTITIONS) != null;
+			return new GwmMysqlBasedTokenizer((Persister)persister, ttl, buffer, partitioned);
 		}
 	}
 	
 	protected SRTokenizer initSRTokenizer(RevocationMode mode, ServletContext ctx) {
 		if(RevocationMode.UCM.equals(mode)) { //UCM
 			return new UcmSRTokenizer();
-		}else if(RevocationMode.PSS.equals(mode)){ //PSS
-			return initPssTokenizer(ctx);
-		}else { //GWM
-			return initGwmTokenizer(ctx);
 		}
+		var guard = ctx.getAttribute(KEY_GUARD);
+		var result = RevocationMode.PSS.equals(mode) ? 
+				initPssTokenizer(ctx) : initGwmTokenizer(ctx);
+		if(guard == null) return result;
+		return new GuardedTokenizer(result, (RevocationGuard)guard);
 	}
 }
\ No newline at end of file
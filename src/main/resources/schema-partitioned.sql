@@ -0,0 +1,17 @@
+-- The micro-states of the MYSQL tokenizers in daily RANGE partitions(jdbc.partitioned=true).
+-- issued: the timestamp of the token(seconds since 2020), the partition key. The lookups
+-- of the verification carry it, so they touch 1 ~ 2 partitions only.
+-- The partitions are created in advance and dropped after the token lifetime by StatePartitions,
+-- pmax catches the rows beyond the last partition. The first day is split off on start.
+create table if not exists srt_token_state (
+	salt bigint not null,
+	uid varchar(64) null,
+	hash varbinary(32) null,
+	expiry bigint not null default 0,
+	issued int not null,
+	primary key (salt, issued),
+	key idx_srt_token_state_uid (uid)
+) engine=InnoDB
+partition by range (issued) (
+	partition pmax values less than maxvalue
+);
@@ -0,0 +1,13 @@
+-- The micro-states of the MYSQL tokenizers.
+-- PSS saves uid, salt and hash; GWM saves the salt only.
+-- hash: the binary BLAKE3 context hash, 16 ~ 32 bytes(srt.hashLength)
+-- expiry: epoch seconds, 0 means never(deleted by StateSweeper)
+create table if not exists srt_token_state (
+	salt bigint not null,
+	uid varchar(64) null,
+	hash varbinary(32) null,
+	expiry bigint not null default 0,
+	primary key (salt),
+	key idx_srt_token_state_uid (uid),
+	key idx_srt_token_state_expiry (expiry)
+) engine=InnoDB;
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import cn.techarts.srt.core.Configuration;
+import cn.techarts.srt.core.Session;
+import cn.techarts.srt.impl.UcmSRTokenizer;
+import cn.techarts.srt.support.StandIns;
+
+public class AbstractSRTokenizerTest {
+	private final SRTokenizer tokenizer = new UcmSRTokenizer();
+	private final Configuration config = StandIns.configuration(RevocationMode.UCM);
+	private final Session session = StandIns.session(1);
+	
+	@Test
+	public void acceptIssuedToken() {
+		var token = tokenizer.issue(session, config, null);
+		assertEquals(Result.OK, tokenizer.verify(token, session, config));
+		var unpadded = token.replace("=", "");
+		assertEquals(Result.OK, tokenizer.verify(unpadded, session, config));
+	}
+	
+	@Test
+	public void rejectMalformedTokens() {
+		var token = tokenizer.issue(session, config, null);
+		assertEquals(Result.ERR_FORMAT, tokenizer.verify(null, session, config));
+		assertEquals(Result.ERR_FORMAT, tokenizer.verify("", session, config));
+		assertEquals(Result.ERR_FORMAT, tokenizer.verify(token.substring(0, 20), session, config));
+		assertEquals(Result.ERR_FORMAT, tokenizer.verify(token.repeat(40), session, config));
+		assertEquals(Result.ERR_FORMAT, tokenizer.verify(token.replace('A', '+').replace('B', '/') + "!", session, config));
+	}
+	
+	@Test
+	public void rejectForgedTokens() {
+		var token = tokenizer.issue(session, config, null).toCharArray();
+		token[20] = token[20] == 'A' ? 'B' : 'A';
+		assertEquals(Result.ERR_CRYPT, tokenizer.verify(new String(token), session, config));
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.bench;
+
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cn.techarts.srt.core.Configuration;
+import cn.techarts.srt.core.MicroState;
+import cn.techarts.srt.core.SRToken;
+import cn.techarts.srt.core.SRTokenView;
+import cn.techarts.srt.core.Session;
+import cn.techarts.srt.support.StandIns;
+import cn.techarts.srt.support.Target;
+import cn.techarts.srt.util.Base64Url;
+import cn.techarts.srt.util.ByteBuf;
+
+/**
+ * The separate stages of the token path: binary encoding, AES-GCM, BLAKE3 and BASE64.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StageBenchmark {
+	@Param({"UCM", "PSS"})
+	public String target;
+	
+	private Session session;
+	private Configuration config;
+	private byte[] content, encrypted;
+	private String token;
+	private char[] chars = new char[2048];
+	private byte[] bytes = new byte[1536];
+	
+	@Setup
+	public void setup() {
+		session = StandIns.session(1);
+		config = Target.valueOf(target).configuration();
+		content = new SRToken().encode(session, config, (byte)0, null);
+		encrypted = config.encrypt(content);
+		token = Base64.getUrlEncoder().encodeToString(encrypted);
+	}
+	
+	@Benchmark
+	public byte[] encode() {
+		return new SRToken().encode(session, config, (byte)0, null);
+	}
+	
+	@Benchmark
+	public int encodeLocal() {
+		var buffer = ByteBuf.local(SRToken.lengthOf(session, config, null));
+		return new SRToken().encode(session, config, (byte)0, null, buffer);
+	}
+	
+	@Benchmark
+	public SRToken decode() {
+		return new SRToken(content, config);
+	}
+	
+	@Benchmark
+	public long decodeView() {
+		var view = new SRTokenView(content, 0, content.length);
+		return view.getLongSalt() + view.getTimestamp() + view.getUa();
+	}
+	
+	@Benchmark
+	public byte[] encrypt() {
+		return config.encrypt(content);
+	}
+	
+	@Benchmark
+	public byte[] decrypt() {
+		return config.decrypt(encrypted);
+	}
+	
+	@Benchmark
+	public byte[] contextHash() {
+		return MicroState.calcContextHash(content);
+	}
+	
+	@Benchmark
+	public String base64Encode() {
+		return Base64.getUrlEncoder().encodeToString(encrypted);
+	}
+	
+	@Benchmark
+	public byte[] base64Decode() {
+		return Base64.getUrlDecoder().decode(token);
+	}
+	
+	@Benchmark
+	public int base64UrlEncode() {
+		return Base64Url.encode(encrypted, 0, encrypted.length, chars, 0);
+	}
+	
+	@Benchmark
+	public int base64UrlDecode() {
+		return Base64Url.decode(token, bytes, 0);
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cn.techarts.srt.Result;
+import cn.techarts.srt.SRTokenizer;
+import cn.techarts.srt.core.Configuration;
+import cn.techarts.srt.core.Session;
+import cn.techarts.srt.support.StandIns;
+import cn.techarts.srt.support.Target;
+
+/**
+ * End-to-end AbstractSRTokenizer.issue and verify for every revocation mode and storage.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenizerBenchmark {
+	@Param({"UCM", "PSS_REDIS", "PSS_REDIS_SCRIPTED", "PSS_REDIS_COMPACT", "PSS_MYSQL", "PSS_FILE", "GWM_REDIS", "GWM_REDIS_NEAR", "GWM_REDIS_COMPACT", "GWM_MYSQL", "GWM_MEMORY"})
+	public String target;
+	
+	private SRTokenizer tokenizer;
+	private Configuration config;
+	private Session[] sessions;
+	private String[] tokens;
+	private List<Session> batch;
+	private List<String> batchTokens;
+	
+	private static final int SESSIONS = 1024; //Power of 2
+	
+	@State(Scope.Thread)
+	public static class Cursor {
+		private int next;
+		
+		int next() {
+			return (next++) & (SESSIONS - 1);
+		}
+	}
+	
+	@Setup
+	public void setup() {
+		config = Target.valueOf(target).configuration();
+		tokenizer = Target.valueOf(target).tokenizer();
+		sessions = new Session[SESSIONS];
+		tokens = new String[SESSIONS];
+		for(int i = 0; i < SESSIONS; i++) {
+			sessions[i] = StandIns.session(i);
+			tokens[i] = tokenizer.issue(sessions[i], config, null);
+		}
+		batch = List.of(sessions);
+		batchTokens = List.of(tokens);
+	}
+	
+	@Benchmark
+	public String issue(Cursor cursor) {
+		return tokenizer.issue(sessions[cursor.next()], config, null);
+	}
+	
+	/**
+	 * The score is batches(of {@value SESSIONS} tokens) per second
+	 */
+	@Benchmark
+	public List<String> issueBatch() {
+		return tokenizer.issue(batch, config);
+	}
+	
+	@Benchmark
+	public Result verify(Cursor cursor) {
+		var i = cursor.next();
+		return tokenizer.verify(tokens[i], sessions[i], config);
+	}
+	
+	/**
+	 * The score is batches(of {@value SESSIONS} tokens) per second
+	 */
+	@Benchmark
+	public List<Result> verifyBatch() {
+		return tokenizer.verify(batchTokens, batch, config);
+	}
+	
+	/**
+	 * Run with many threads(-t) to see the multiplexing of the REDIS stores
+	 */
+	@Benchmark
+	public Result verifyAsync(Cursor cursor) {
+		var i = cursor.next();
+		return tokenizer.verifyAsync(tokens[i], sessions[i], config).join();
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.core;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MicroStateTest {
+	private static final byte[] PAYLOAD = "srt-binary-payload".getBytes();
+	
+	@Test
+	public void equalHashesOfDistinctInstances() {
+		var stored = MicroState.calcContextHash(PAYLOAD);
+		var state = new MicroState("u1", 1L, stored.clone());
+		assertTrue(state.checkHash(MicroState.calcContextHash(PAYLOAD)));
+	}
+	
+	@Test
+	public void differentHashes() {
+		var state = new MicroState("u1", 1L, MicroState.calcContextHash(PAYLOAD));
+		var other = MicroState.calcContextHash("srt-binary-payloae".getBytes());
+		assertFalse(state.checkHash(other));
+	}
+	
+	@Test
+	public void truncatedHashIsPrefix() {
+		var full = MicroState.calcContextHash(PAYLOAD);
+		var truncated = MicroState.calcContextHash(PAYLOAD, 0, PAYLOAD.length, 16);
+		var state = new MicroState("u1", 1L, full);
+		assertFalse(state.checkHash(truncated));
+		for(int i = 0; i < truncated.length; i++) {
+			assertTrue(full[i] == truncated[i]);
+		}
+	}
+	
+	@Test
+	public void missingHash() {
+		assertFalse(new MicroState(1L).checkHash(MicroState.calcContextHash(PAYLOAD)));
+		assertFalse(new MicroState("u1", 1L, MicroState.calcContextHash(PAYLOAD)).checkHash(null));
+	}
+}
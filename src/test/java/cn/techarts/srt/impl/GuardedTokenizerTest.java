@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import cn.techarts.srt.Result;
+import cn.techarts.srt.RevocationMode;
+import cn.techarts.srt.core.Configuration;
+import cn.techarts.srt.core.SRTokenView;
+import cn.techarts.srt.support.StandIns;
+
+public class GuardedTokenizerTest {
+	@Test
+	public void answerFromTheGuard() {
+		var guard = new RevocationGuard(1000, 3600, 1024, 60);
+		var tokenizer = new GuardedTokenizer(new PssMysqlBasedTokenizer(StandIns.startMysql()), guard);
+		var config = StandIns.configuration(RevocationMode.PSS);
+		var alice = StandIns.session(90001);
+		var bob = StandIns.session(90002);
+		var first = tokenizer.issue(alice, config, null);
+		var second = tokenizer.issue(bob, config, null);
+		assertEquals(Result.OK, tokenizer.verify(first, alice, config));
+		assertEquals(Result.OK, tokenizer.verify(second, bob, config));
+		assertEquals(2, guard.getPositiveHits());
+		assertEquals(0, guard.getStoreLookups());
+		
+		tokenizer.revocate(alice.getUid());
+		assertEquals(1, guard.getRevoked());
+		var result = tokenizer.verify(List.of(first, second), List.of(alice, bob), config);
+		assertEquals(List.of(Result.ERR_STATE, Result.OK), result);
+		assertEquals(1, guard.getFilterHits());
+		assertEquals(0, guard.getFalsePositives());
+		assertTrue(guard.getMemory() > 0);
+	}
+	
+	@Test
+	public void askTheStoreOnMisses() {
+		var guard = new RevocationGuard(1000, 3600, 1024, 60);
+		var store = new GwmMysqlBasedTokenizer(StandIns.startMysql());
+		var config = StandIns.configuration(RevocationMode.GWM);
+		var session = StandIns.session(90003);
+		var token = store.issue(session, config, null); //Issued by another node
+		var tokenizer = new GuardedTokenizer(store, guard);
+		assertEquals(Result.OK, tokenizer.verify(token, session, config));
+		assertEquals(Result.OK, tokenizer.verify(token, session, config));
+		assertEquals(1, guard.getStoreLookups());
+		assertEquals(1, guard.getPositiveHits());
+	}
+	
+	/**
+	 * Without the broadcast another node's revocation is seen by the store only
+	 */
+	@Test
+	public void askTheStoreWithoutPositiveCache() {
+		var guard = new RevocationGuard(1000, 3600, 1024, 0);
+		var store = new PssMysqlBasedTokenizer(StandIns.startMysql());
+		var config = StandIns.configuration(RevocationMode.PSS);
+		var session = StandIns.session(90004);
+		var tokenizer = new GuardedTokenizer(store, guard);
+		var token = tokenizer.issue(session, config, null);
+		assertEquals(Result.OK, tokenizer.verify(token, session, config));
+		assertEquals(0, guard.getPositiveHits());
+		store.revocate(session.getUid()); //On another node
+		assertEquals(Result.ERR_STATE, tokenizer.verify(token, session, config));
+		assertEquals(2, guard.getStoreLookups());
+	}
+	
+	@Test
+	public void delegateToTheStoreHook() {
+		var guard = new RevocationGuard(1000, 3600, 1024, 60);
+		var hooks = new AtomicInteger();
+		var store = new PssMysqlBasedTokenizer(StandIns.startMysql()) {
+			@Override
+			public Result verifyState(SRTokenView srtoken, Configuration config) {
+				hooks.incrementAndGet();
+				return super.verifyState(srtoken, config);
+			}
+		};
+		var config = StandIns.configuration(RevocationMode.PSS);
+		var session = StandIns.session(90004);
+		var token = store.issue(session, config, null); //Issued by another node
+		var tokenizer = new GuardedTokenizer(store, guard);
+		assertEquals(Result.OK, tokenizer.verify(token, session, config));
+		assertEquals(Result.OK, tokenizer.verify(token, session, config)); //Cached
+		assertEquals(1, hooks.get());
+		assertEquals(1, guard.getPositiveHits());
+		
+		tokenizer.revocate(session.getUid());
+		assertEquals(Result.ERR_STATE, tokenizer.verify(token, session, config));
+		assertEquals(1, hooks.get()); //Rejected by the guard
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import cn.techarts.srt.Result;
+import cn.techarts.srt.RevocationMode;
+import cn.techarts.srt.support.StandIns;
+import cn.techarts.srt.util.SaltCache;
+
+/**
+ * Two nodes(tokenizers with their own near-caches) sharing ONE REDIS stand-in.
+ */
+public class GwmNearCacheTest {
+	private static final int TIMEOUT = 5000; //ms
+	
+	@Test
+	public void revocationReachesOtherNodes() throws InterruptedException {
+		StandIns.startRedis();
+		var cacheOfA = new SaltCache(1024, 60);
+		var cacheOfB = new SaltCache(1024, 60);
+		var nodeA = new GwmRedisBasedTokenizer(cacheOfA);
+		var nodeB = new GwmRedisBasedTokenizer(cacheOfB);
+		var subscriber = GwmRedisBasedTokenizer.listen(cacheOfB);
+		var deadline = System.currentTimeMillis() + TIMEOUT;
+		while(!subscriber.isSubscribed() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		try {
+			var config = StandIns.configuration(RevocationMode.GWM);
+			var session = StandIns.session(9001);
+			var token = nodeA.issue(session, config, null);
+			var salt = StandIns.saltOf(token, config);
+			assertTrue(cacheOfA.contains(salt)); //Written through
+			assertEquals(Result.OK, nodeB.verify(token, session, config));
+			assertTrue(cacheOfB.contains(salt));
+			
+			nodeA.revocate(null, salt);
+			assertEquals(Result.ERR_STATE, nodeA.verify(token, session, config));
+			while(cacheOfB.contains(salt) && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(Result.ERR_STATE, nodeB.verify(token, session, config));
+		}finally {
+			subscriber.unsubscribe();
+		}
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import cn.techarts.srt.Result;
+import cn.techarts.srt.SRTokenizer;
+import cn.techarts.srt.core.Configuration;
+import cn.techarts.srt.core.Session;
+import cn.techarts.srt.support.StandIns;
+import cn.techarts.srt.support.Target;
+import cn.techarts.srt.util.OffHeapLongSet;
+
+/**
+ * GWM issue-then-verify against the storages(REDIS text/near-cached/compact, MYSQL direct 
+ * and write-behind over a replica, off-heap memory), the bulk lookups in particular.
+ */
+@RunWith(Parameterized.class)
+public class GwmTokenizerTest {
+	private final SRTokenizer tokenizer;
+	private final Configuration config;
+	
+	private static final AtomicInteger SESSIONS = new AtomicInteger(7000);
+	
+	@Parameters(name = "{0}")
+	public static List<Target> storages() {
+		return List.of(Target.GWM_REDIS, Target.GWM_REDIS_NEAR, Target.GWM_REDIS_COMPACT, 
+					   Target.GWM_MYSQL, Target.GWM_MYSQL_BUFFERED, Target.GWM_MEMORY);
+	}
+	
+	public GwmTokenizerTest(Target target) {
+		this.config = target.configuration();
+		this.tokenizer = target.tokenizer();
+	}
+	
+	private static Session nextSession() {
+		return StandIns.session(SESSIONS.incrementAndGet());
+	}
+	
+	private void revocate(String token) {
+		tokenizer.revocate(null, StandIns.saltOf(token, config));
+	}
+	
+	@Test
+	public void verifyIssuedToken() {
+		var session = nextSession();
+		var token = tokenizer.issue(session, config, null);
+		assertEquals(Result.OK, tokenizer.verify(token, session, config));
+		assertEquals(Result.OK, tokenizer.verify(token, session, config));
+		revocate(token);
+		assertEquals(Result.ERR_STATE, tokenizer.verify(token, session, config));
+	}
+	
+	/**
+	 * More tokens than one bulk lookup takes, a revoked one in each chunk
+	 */
+	@Test
+	public void verifyManyTokensInBatch() {
+		var sessions = new ArrayList<Session>();
+		for(int i = 0; i < 1500; i++) sessions.add(nextSession());
+		var tokens = tokenizer.issue(sessions, config);
+		revocate(tokens.get(10));
+		revocate(tokens.get(1200));
+		var result = tokenizer.verify(tokens, sessions, config);
+		assertEquals(tokens.size(), result.size());
+		for(int i = 0; i < result.size(); i++) {
+			var expected = i == 10 || i == 1200 ? Result.ERR_STATE : Result.OK;
+			assertEquals("Token " + i, expected, result.get(i));
+		}
+	}
+	
+	@Test
+	public void verifyTokensInBatch() {
+		var alice = nextSession();
+		var bob = nextSession();
+		var carol = nextSession();
+		var first = tokenizer.issue(alice, config, null);
+		var second = tokenizer.issue(bob, config, null);
+		var revoked = tokenizer.issue(carol, config, null);
+		revocate(revoked);
+		var elsewhere = new GwmMemoryBasedTokenizer(new OffHeapLongSet(16, 3600));
+		var missing = elsewhere.issue(carol, config, null); //Never saved in this store
+		var tokens = List.of(first, "%%%", revoked, second, missing, first);
+		var sessions = List.of(alice, alice, carol, bob, carol, bob);
+		var result = tokenizer.verify(tokens, sessions, config);
+		assertEquals(List.of(Result.OK, Result.ERR_FORMAT, Result.ERR_STATE, 
+				Result.OK, Result.ERR_STATE, Result.ERR_UID), result);
+	}
+	
+	@Test
+	public void verifyTokensAsync() {
+		var sessions = new ArrayList<Session>();
+		var tokens = new ArrayList<String>();
+		for(int i = 0; i < 200; i++) {
+			sessions.add(nextSession());
+			tokens.add(tokenizer.issue(sessions.get(i), config, null));
+		}
+		revocate(tokens.get(0));
+		var futures = new ArrayList<CompletableFuture<Result>>();
+		for(int i = 0; i < tokens.size(); i++) {
+			futures.add(tokenizer.verifyAsync(tokens.get(i), sessions.get(i), config));
+		}
+		assertEquals(Result.ERR_STATE, futures.get(0).join());
+		for(int i = 1; i < futures.size(); i++) {
+			assertEquals(Result.OK, futures.get(i).join());
+		}
+	}
+}
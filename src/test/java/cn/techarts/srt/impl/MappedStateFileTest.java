@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedStateFileTest {
+	private Path path;
+	
+	private static final byte[] HASH = new byte[] {1, 2, 3, 4};
+	
+	@Before
+	public void setUp() throws IOException {
+		path = Files.createTempFile("srt-states", ".log");
+		Files.delete(path);
+	}
+	
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(path);
+	}
+	
+	@Test
+	public void recoverOnRestart() {
+		try(var file = new MappedStateFile(path.toString(), false)){
+			file.put("alice", 1L, HASH);
+			file.put("alice", 2L, HASH);
+			file.put("alice", 3L, HASH);
+			file.put("bob", 4L, HASH);
+			file.put("carol", 5L, HASH);
+			file.remove(2L);
+			file.removeAll("carol");
+		}
+		try(var file = new MappedStateFile(path.toString(), false)){
+			assertEquals(3, file.size());
+			assertEquals(2, file.getAll("alice").size());
+			assertNull(file.get(2L));
+			assertNull(file.get(5L));
+			var state = file.get(4L);
+			assertEquals("bob", state.getUid());
+			assertArrayEquals(HASH, state.getHash());
+		}
+	}
+	
+	@Test
+	public void discardTornTail() throws IOException {
+		int length = 0;
+		try(var file = new MappedStateFile(path.toString(), false)){
+			file.put("alice", 1L, HASH);
+			length = file.length();
+			file.put("alice", 2L, HASH);
+		}
+		try(var raf = new RandomAccessFile(path.toFile(), "rw")){
+			raf.seek(length + 5);
+			raf.write(0x7F); //A half-written record
+		}
+		try(var file = new MappedStateFile(path.toString(), false)){
+			assertEquals(1, file.size());
+			assertEquals(length, file.length());
+			file.put("alice", 3L, HASH);
+		}
+		try(var file = new MappedStateFile(path.toString(), false)){
+			assertEquals(2, file.getAll("alice").size());
+		}
+	}
+	
+	@Test
+	public void compactLiveStates() {
+		try(var file = new MappedStateFile(path.toString(), false)){
+			for(long salt = 1; salt <= 1000; salt++) {
+				file.put("u" + (salt % 10), salt, HASH);
+				if(salt % 4 != 0) file.remove(salt);
+			}
+			var before = file.length();
+			file.compact();
+			assertTrue(file.length() < before);
+			assertEquals(250, file.size());
+			assertEquals(50, file.getAll("u0").size());
+			file.removeAll("u0");
+			assertEquals(200, file.size());
+		}
+		try(var file = new MappedStateFile(path.toString(), false)){
+			assertEquals(200, file.size());
+			assertEquals(0, file.getAll("u0").size());
+			assertEquals(50, file.getAll("u2").size());
+		}
+	}
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import redis.clients.jedis.util.JedisClusterCRC16;
+
+public class PssRedisBasedTokenizerTest {
+	@Test
+	public void tagTheUidInClusterMode() {
+		assertEquals("1001", PssRedisBasedTokenizer.key("1001", false));
+		assertEquals("{1001}", PssRedisBasedTokenizer.key("1001", true));
+		assertEquals("{a:b}", PssRedisBasedTokenizer.key("a:b", true));
+		var slot = JedisClusterCRC16.getSlot("1001");
+		assertEquals(slot, JedisClusterCRC16.getSlot(PssRedisBasedTokenizer.key("1001", true)));
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import cn.techarts.srt.Result;
+import cn.techarts.srt.SRTokenizer;
+import cn.techarts.srt.core.Configuration;
+import cn.techarts.srt.core.MicroState;
+import cn.techarts.srt.core.Session;
+import cn.techarts.srt.support.StandIns;
+import cn.techarts.srt.support.Target;
+
+/**
+ * PSS issue-then-verify against the storages(REDIS text/scripted/compact and MYSQL stand-ins, local file).
+ */
+@RunWith(Parameterized.class)
+public class PssTokenizerTest {
+	private final SRTokenizer tokenizer;
+	private final Configuration config;
+	
+	private static final AtomicInteger SESSIONS = new AtomicInteger(5000);
+	
+	@Parameters(name = "{0}")
+	public static List<Target> storages() {
+		return List.of(Target.PSS_REDIS, Target.PSS_REDIS_SCRIPTED, Target.PSS_REDIS_COMPACT, Target.PSS_MYSQL, Target.PSS_FILE);
+	}
+	
+	public PssTokenizerTest(Target target) {
+		this.config = target.configuration();
+		this.tokenizer = target.tokenizer();
+	}
+	
+	private static Session nextSession() {
+		return StandIns.session(SESSIONS.incrementAndGet());
+	}
+	
+	@Test
+	public void verifyIssuedToken() {
+		var session = nextSession();
+		var token = tokenizer.issue(session, config, null);
+		assertEquals(Result.OK, tokenizer.verify(token, session, config));
+		assertEquals(Result.OK, tokenizer.verify(token, session, config));
+	}
+	
+	@Test
+	public void verifyBatchIssuedTokens() {
+		var sessions = new ArrayList<Session>();
+		for(int i = 0; i < 1500; i++) sessions.add(nextSession());
+		var tokens = tokenizer.issue(sessions, config);
+		assertEquals(sessions.size(), tokens.size());
+		for(int i = 0; i < tokens.size(); i++) {
+			assertEquals(Result.OK, tokenizer.verify(tokens.get(i), sessions.get(i), config));
+		}
+		assertEquals(Result.ERR_UID, tokenizer.verify(tokens.get(0), sessions.get(1), config));
+	}
+	
+	@Test
+	public void verifyTokensInBatch() {
+		var alice = nextSession();
+		var bob = nextSession();
+		var carol = nextSession();
+		var first = tokenizer.issue(alice, config, null);
+		var second = tokenizer.issue(alice, config, null);
+		var third = tokenizer.issue(bob, config, null);
+		var revoked = tokenizer.issue(carol, config, null);
+		tokenizer.revocate(carol.getUid());
+		var tokens = List.of(first, "%%%", second, third, revoked, first);
+		var sessions = List.of(alice, alice, alice, bob, carol, bob);
+		var result = tokenizer.verify(tokens, sessions, config);
+		assertEquals(List.of(Result.OK, Result.ERR_FORMAT, Result.OK, 
+				Result.OK, Result.ERR_STATE, Result.ERR_UID), result);
+	}
+	
+	@Test
+	public void verifyTokensAsync() {
+		var sessions = new ArrayList<Session>();
+		var tokens = new ArrayList<String>();
+		for(int i = 0; i < 200; i++) {
+			sessions.add(nextSession());
+			tokens.add(tokenizer.issue(sessions.get(i), config, null));
+		}
+		tokenizer.revocate(sessions.get(0).getUid());
+		var futures = new ArrayList<CompletableFuture<Result>>();
+		for(int i = 0; i < tokens.size(); i++) {
+			futures.add(tokenizer.verifyAsync(tokens.get(i), sessions.get(i), config));
+		}
+		assertEquals(Result.ERR_STATE, futures.get(0).join());
+		for(int i = 1; i < futures.size(); i++) {
+			assertEquals(Result.OK, futures.get(i).join());
+		}
+		var future = tokenizer.verifyAsync(tokens.get(1), sessions.get(2), config);
+		assertEquals(Result.ERR_UID, future.join());
+	}
+	
+	@Test
+	public void verifyTruncatedHash() {
+		var session = nextSession();
+		config.setHashLength(16);
+		try {
+			var token = tokenizer.issue(session, config, null);
+			assertEquals(Result.OK, tokenizer.verify(token, session, config));
+		}finally {
+			config.setHashLength(MicroState.HASH_LENGTH);
+		}
+	}
+	
+	@Test
+	public void rejectMismatchedHashLength() {
+		var session = nextSession();
+		config.setHashLength(16);
+		String token = null;
+		try {
+			token = tokenizer.issue(session, config, null);
+		}finally {
+			config.setHashLength(MicroState.HASH_LENGTH);
+		}
+		assertEquals(Result.ERR_HASH, tokenizer.verify(token, session, config));
+	}
+	
+	@Test
+	public void rejectSessionRevokedToken() {
+		var session = nextSession();
+		var token = tokenizer.issue(session, config, null);
+		var states = tokenizer.getStates(session.getUid());
+		assertEquals(1, states.size());
+		tokenizer.revocate(session.getUid(), states.get(0).getSalt());
+		assertEquals(Result.ERR_STATE, tokenizer.verify(token, session, config));
+	}
+	
+	@Test
+	public void rejectUserRevokedTokens() {
+		var session = nextSession();
+		var first = tokenizer.issue(session, config, null);
+		var second = tokenizer.issue(session, config, null);
+		assertEquals(2, tokenizer.getStates(session.getUid()).size());
+		tokenizer.revocate(session.getUid());
+		assertEquals(Result.ERR_STATE, tokenizer.verify(first, session, config));
+		assertEquals(Result.ERR_STATE, tokenizer.verify(second, session, config));
+	}
+}
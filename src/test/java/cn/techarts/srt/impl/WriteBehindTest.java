@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import cn.techarts.srt.Result;
+import cn.techarts.srt.RevocationMode;
+import cn.techarts.srt.core.MicroState;
+import cn.techarts.srt.support.StandIns;
+
+public class WriteBehindTest {
+	private static final String SELECT = "select salt from srt_token_state where salt=?";
+	
+	@Test
+	public void verifyBeforeTheFlushLands() {
+		var persister = StandIns.startMysql();
+		var buffer = PssMysqlBasedTokenizer.newWriteBehind(persister, 60000, 100);
+		var buffered = new PssMysqlBasedTokenizer(persister, 60, buffer);
+		var direct = new PssMysqlBasedTokenizer(persister, 60);
+		var config = StandIns.configuration(RevocationMode.PSS);
+		var alice = StandIns.session(93001);
+		var bob = StandIns.session(93002);
+		var first = buffered.issue(alice, config, null);
+		var second = buffered.issue(bob, config, null);
+		assertEquals(2, buffer.getPending());
+		assertEquals(Result.OK, buffered.verify(first, alice, config));
+		assertEquals(Result.ERR_STATE, direct.verify(first, alice, config));
+
+		buffered.revocate(bob.getUid());
+		assertEquals(1, buffer.flush());
+		assertEquals(0, buffer.getPending());
+		assertEquals(1, buffer.getBatches());
+		assertEquals(Result.OK, direct.verify(first, alice, config));
+		assertEquals(Result.ERR_STATE, direct.verify(second, bob, config));
+		assertEquals(Result.ERR_STATE, buffered.verify(second, bob, config));
+	}
+
+	@Test
+	public void flushWhenTheBatchIsFull() throws InterruptedException {
+		var persister = StandIns.startMysql();
+		var buffer = GwmMysqlBasedTokenizer.newWriteBehind(persister, 60000, 2).start();
+		var buffered = new GwmMysqlBasedTokenizer(persister, 60, buffer);
+		var direct = new GwmMysqlBasedTokenizer(persister, 60);
+		var config = StandIns.configuration(RevocationMode.GWM);
+		var alice = StandIns.session(93003);
+		var first = buffered.issue(alice, config, null);
+		assertEquals(Result.OK, buffered.verify(first, alice, config));
+		buffered.issue(StandIns.session(93004), config, null);
+		for(int i = 0; i < 100 && buffer.getFlushed() < 2; i++) Thread.sleep(10);
+		buffer.close();
+		assertEquals(2, buffer.getFlushed());
+		assertEquals(0, buffer.getPendingAge());
+		assertEquals(Result.OK, direct.verify(first, alice, config));
+	}
+
+	@Test
+	public void dropTheRowsViolatingConstraints() {
+		var persister = StandIns.startMysql();
+		var buffer = GwmMysqlBasedTokenizer.newWriteBehind(persister, 60000, 10);
+		persister.update("insert into srt_token_state (salt, expiry) values(?,?)", 93005L, 0L);
+		buffer.add(new MicroState(93005L), new Object[] {93005L, 0L}); //Duplicate
+		buffer.add(new MicroState(93006L), new Object[] {93006L, 0L});
+		assertEquals(1, buffer.flush());
+		assertEquals(1, buffer.getFailures());
+		assertEquals(1, buffer.getDropped());
+		assertEquals(0, buffer.getPending());
+		assertEquals(Long.valueOf(93006L), persister.get(SELECT, row -> row.getLong(1), 93006L));
+	}
+
+	@Test
+	public void retryUntilTheDatabaseRecovers() {
+		var persister = StandIns.startMysql();
+		var buffer = new WriteBehind(persister, "insert into srt_late (salt) values(?)", 60000, 10, 100);
+		buffer.add(new MicroState(93007L), new Object[] {93007L});
+		buffer.add(new MicroState(93009L), new Object[] {93009L});
+		for(int i = 0; i < 8; i++) {
+			assertEquals(0, buffer.flush()); //The table is missing: retried in the next round
+			assertEquals(2, buffer.getPending());
+		}
+		persister.update("create table if not exists srt_late (salt bigint primary key)");
+		assertEquals(2, buffer.flush());
+		assertEquals(8, buffer.getFailures());
+		assertEquals(0, buffer.getDropped());
+		assertEquals(0, buffer.getPending());
+		var rows = persister.getAll("select salt from srt_late order by salt", row -> row.getLong(1));
+		assertEquals(List.of(93007L, 93009L), rows);
+	}
+
+	@Test
+	public void insertDirectlyWhenTheBufferIsFull() {
+		var persister = StandIns.startMysql();
+		var buffer = GwmMysqlBasedTokenizer.newWriteBehind(persister, 60000, 10, 1, false);
+		var buffered = new GwmMysqlBasedTokenizer(persister, 60, buffer);
+		var direct = new GwmMysqlBasedTokenizer(persister, 60);
+		var config = StandIns.configuration(RevocationMode.GWM);
+		var alice = StandIns.session(93010);
+		var bob = StandIns.session(93011);
+		var first = buffered.issue(alice, config, null);
+		var second = buffered.issue(bob, config, null); //Beyond the capacity
+		assertEquals(1, buffer.getPending());
+		assertEquals(1, buffer.getOverflows());
+		assertEquals(Result.ERR_STATE, direct.verify(first, alice, config));
+		assertEquals(Result.OK, direct.verify(second, bob, config));
+	}
+
+	@Test
+	public void publishTheMetricsViaJmx() throws Exception {
+		var buffer = new WriteBehind(StandIns.startMysql(), "insert into srt_missing (salt) values(?)", 60000, 10, 100);
+		var server = ManagementFactory.getPlatformMBeanServer();
+		var name = new ObjectName("cn.techarts.srt:type=WriteBehind,name=test");
+		server.registerMBean(buffer, name);
+		try {
+			buffer.add(new MicroState(93008L), new Object[] {93008L});
+			assertEquals(1, server.getAttribute(name, "Pending"));
+			assertEquals(60000L, server.getAttribute(name, "Window"));
+			assertEquals(0L, server.getAttribute(name, "Dropped"));
+			assertEquals(100, server.getAttribute(name, "Capacity"));
+		}finally {
+			server.unregisterMBean(name);
+		}
+	}
+}
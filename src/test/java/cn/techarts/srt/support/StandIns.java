@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.support;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.fppt.jedismock.RedisServer;
+
+import cn.techarts.srt.RevocationMode;
+import cn.techarts.srt.core.Configuration;
+import cn.techarts.srt.core.SRTokenView;
+import cn.techarts.srt.core.Session;
+import cn.techarts.srt.impl.MappedStateFile;
+import cn.techarts.srt.util.Base64Url;
+import cn.techarts.srt.util.Cacher;
+import cn.techarts.srt.util.Persister;
+
+/**
+ * In-process replacements of REDIS(jedis-mock) and MYSQL(H2 in MySQL mode).<br>
+ * The real Cacher and Persister are used, so the runs are reproducible offline.
+ * The storages under test are listed by {@link Target}.
+ */
+public final class StandIns {
+	private static RedisServer redis = null;
+	private static Persister persister = null;
+	private static Persister replicated = null;
+	private static MappedStateFile stateFile = null;
+	
+	public static final String UA = "Mozilla/5.0 (X11; Linux x86_64) Gecko/20100101 Firefox/128.0";
+	
+	public static synchronized void startRedis() {
+		if(redis != null) return;
+		try {
+			redis = RedisServer.newRedisServer().start();
+			Cacher.initConnectionPool(redis.getHost(), redis.getBindPort(), 64);
+		}catch(IOException e) {
+			throw new RuntimeException("Failed to start the REDIS stand-in", e);
+		}
+	}
+	
+	public static synchronized Persister startMysql() {
+		if(persister != null) return persister;
+		persister = startMysql("srt", "schema.sql");
+		return persister;
+	}
+	
+	/**
+	 * The stand-in read via a replica: the stand-in itself(no lag, window 0)
+	 */
+	public static synchronized Persister startReplicatedMysql() {
+		if(replicated != null) return replicated;
+		startMysql();
+		var url = url("srt");
+		replicated = new Persister("org.h2.Driver", url, "sa", "", List.of(url), 0);
+		return replicated;
+	}
+	
+	private static String url(String database) {
+		return "jdbc:h2:mem:" + database + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+	}
+	
+	/**
+	 * A new H2 database with the state table of a shipped schema(src/main/resources)
+	 */
+	public static Persister startMysql(String database, String schema) {
+		var result = new Persister("org.h2.Driver", url(database), "sa", "");
+		try {
+			for(var statement : statements(schema)) {
+				result.getExecutor().update(statement);
+			}
+			return result;
+		}catch(SQLException e) {
+			throw new RuntimeException("Failed to create the state table", e);
+		}
+	}
+	
+	/**
+	 * The statements of the schema without the comments and the PARTITION BY clause
+	 */
+	public static List<String> statements(String schema) {
+		try(var in = StandIns.class.getResourceAsStream("/" + schema)) {
+			if(in == null) throw new RuntimeException("Failed to find the schema: " + schema);
+			var text = new StringBuilder();
+			var lines = new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\\R");
+			for(var line : lines) {
+				if(!line.trim().startsWith("--")) text.append(line).append('\n');
+			}
+			var result = new ArrayList<String>();
+			for(var statement : text.toString().split(";")) {
+				var cut = statement.toLowerCase().indexOf("partition by");
+				if(cut > 0) statement = statement.substring(0, cut); //H2 has no partitions
+				if(!statement.isBlank()) result.add(statement.trim());
+			}
+			return result;
+		}catch(IOException e) {
+			throw new RuntimeException("Failed to read the schema: " + schema, e);
+		}
+	}
+	
+	public static synchronized MappedStateFile openStateFile() {
+		if(stateFile != null) return stateFile;
+		try {
+			var file = Files.createTempFile("srt-states", ".log");
+			file.toFile().deleteOnExit();
+			stateFile = new MappedStateFile(file.toString(), false);
+			return stateFile;
+		}catch(IOException e) {
+			throw new RuntimeException("Failed to create the state file", e);
+		}
+	}
+	
+	/**
+	 * Decodes the salt of a token
+	 */
+	public static long saltOf(String token, Configuration config) {
+		var bytes = new byte[Base64Url.decodedLength(token)];
+		var length = Base64Url.decode(token, bytes, 0);
+		length = config.getEngine().decrypt(bytes, 0, length, bytes, 0);
+		return new SRTokenView(bytes, 0, length).getLongSalt();
+	}
+	
+	public static Configuration configuration(RevocationMode mode) {
+		return new Configuration(Configuration.TEST_KEY, 3600, 3, true, mode.getValue(), 0);
+	}
+	
+	public static Session session(int index) {
+		var ip = "10.0." + ((index >> 8) & 255) + "." + (index & 255);
+		return new Session("u" + (10000000 + index), ip, UA);
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.support;
+
+import java.util.function.Supplier;
+
+import cn.techarts.srt.RevocationMode;
+import cn.techarts.srt.SRTokenizer;
+import cn.techarts.srt.core.Configuration;
+import cn.techarts.srt.impl.GwmCompactRedisTokenizer;
+import cn.techarts.srt.impl.GwmMemoryBasedTokenizer;
+import cn.techarts.srt.impl.GwmMysqlBasedTokenizer;
+import cn.techarts.srt.impl.GwmRedisBasedTokenizer;
+import cn.techarts.srt.impl.PssCompactRedisTokenizer;
+import cn.techarts.srt.impl.PssFileBasedTokenizer;
+import cn.techarts.srt.impl.PssMysqlBasedTokenizer;
+import cn.techarts.srt.impl.PssRedisBasedTokenizer;
+import cn.techarts.srt.impl.UcmSRTokenizer;
+import cn.techarts.srt.util.OffHeapLongSet;
+import cn.techarts.srt.util.Persister;
+import cn.techarts.srt.util.SaltCache;
+
+/**
+ * The storages shared by the parameterized tests and the benchmarks(JMH @Param by name).
+ * The name starts with the revocation mode.
+ */
+public enum Target {
+	UCM(UcmSRTokenizer::new),
+	PSS_REDIS(() -> redis(PssRedisBasedTokenizer::new)),
+	PSS_REDIS_SCRIPTED(() -> redis(() -> new PssRedisBasedTokenizer(true, 3600 * 3))),
+	PSS_REDIS_COMPACT(() -> redis(PssCompactRedisTokenizer::new)),
+	PSS_MYSQL(() -> new PssMysqlBasedTokenizer(StandIns.startMysql())),
+	PSS_FILE(() -> new PssFileBasedTokenizer(StandIns.openStateFile())),
+	GWM_REDIS(() -> redis(GwmRedisBasedTokenizer::new)),
+	GWM_REDIS_NEAR(() -> redis(() -> new GwmRedisBasedTokenizer(new SaltCache(1 << 16, 30)))),
+	GWM_REDIS_COMPACT(() -> redis(GwmCompactRedisTokenizer::new)),
+	GWM_MYSQL(() -> new GwmMysqlBasedTokenizer(StandIns.startMysql())),
+	GWM_MYSQL_BUFFERED(() -> buffered(StandIns.startReplicatedMysql())),
+	GWM_MEMORY(() -> new GwmMemoryBasedTokenizer(new OffHeapLongSet(1 << 20, 3600)));
+	
+	private final Supplier<SRTokenizer> factory;
+	
+	private Target(Supplier<SRTokenizer> factory) {
+		this.factory = factory;
+	}
+	
+	/**
+	 * The write-behind mode over a replica: some states are pending, the rest are flushed
+	 */
+	private static SRTokenizer buffered(Persister persister) {
+		var buffer = GwmMysqlBasedTokenizer.newWriteBehind(persister, 60000, 64).start();
+		return new GwmMysqlBasedTokenizer(persister, 3600, buffer);
+	}
+	
+	private static SRTokenizer redis(Supplier<SRTokenizer> factory) {
+		StandIns.startRedis();
+		return factory.get();
+	}
+	
+	public SRTokenizer tokenizer() {
+		return factory.get();
+	}
+	
+	public RevocationMode getMode() {
+		return RevocationMode.valueOf(name().substring(0, 3));
+	}
+	
+	public Configuration configuration() {
+		return StandIns.configuration(getMode());
+	}
+}
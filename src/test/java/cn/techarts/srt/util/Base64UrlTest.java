@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class Base64UrlTest {
+	@Test
+	public void sameAsJdk() {
+		var random = new Random(2020);
+		var chars = new char[256];
+		var bytes = new byte[192];
+		for(int length = 0; length < 150; length++) {
+			var src = new byte[length];
+			random.nextBytes(src);
+			var expected = Base64.getUrlEncoder().encodeToString(src);
+			var n = Base64Url.encode(src, 0, length, chars, 0);
+			assertEquals(expected, new String(chars, 0, n));
+			assertEquals(length, Base64Url.decode(expected, bytes, 0));
+			assertArrayEquals(src, Arrays.copyOf(bytes, length));
+			var unpadded = expected.replace("=", "");
+			assertEquals(length, Base64Url.decode(unpadded, bytes, 0));
+			assertArrayEquals(src, Arrays.copyOf(bytes, length));
+		}
+	}
+	
+	@Test
+	public void rejectIllegalText() {
+		var bytes = new byte[64];
+		assertEquals(-1, Base64Url.decode("abcde", bytes, 0));
+		assertEquals(-1, Base64Url.decode("ab+d", bytes, 0));
+		assertEquals(-1, Base64Url.decode("ab/d", bytes, 0));
+		assertEquals(-1, Base64Url.decode("a=cd", bytes, 0));
+		assertEquals(-1, Base64Url.decode("abc\u00e9", bytes, 0));
+		assertEquals(-1, Base64Url.decode("abcd".repeat(25), bytes, 0));
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+
+import redis.clients.jedis.util.JedisClusterCRC16;
+
+public class CacherTest {
+	@Test
+	public void reassembleTheMgetsPerSlot() {
+		var keys = List.of("{1001}", "{1002}", "x{1001}", "{1003}", "{1002}y", "1001");
+		var slots = Cacher.groupBySlot(keys, JedisClusterCRC16::getSlot);
+		assertEquals(3, slots.size()); //{1001} and 1001 share a slot
+		assertEquals(List.of(0, 2, 5), slots.get(JedisClusterCRC16.getSlot("1001")));
+		assertEquals(List.of(1, 4), slots.get(JedisClusterCRC16.getSlot("1002")));
+		
+		var responses = new HashMap<List<Integer>, List<String>>(); //One MGET per slot
+		for(var indexes : slots.values()) {
+			var values = new ArrayList<String>();
+			for(var i : indexes) values.add(keys.get(i).toUpperCase());
+			responses.put(indexes, values);
+		}
+		var result = Cacher.reassemble(keys.size(), responses, values -> values);
+		assertEquals(List.of("{1001}", "{1002}", "X{1001}", "{1003}", "{1002}Y", "1001"), result);
+	}
+	
+	@Test
+	public void reassembleNothing() {
+		var result = Cacher.reassemble(2, new HashMap<List<Integer>, List<String>>(), values -> values);
+		assertEquals(2, result.size());
+		assertEquals(null, result.get(0));
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CuckooFilterTest {
+	@Test
+	public void noFalseNegatives() {
+		var filter = new CuckooFilter(100_000);
+		var random = new Random(2020);
+		var keys = new long[100_000];
+		for(int i = 0; i < keys.length; i++) {
+			keys[i] = random.nextLong();
+			assertTrue(filter.add(keys[i]));
+		}
+		for(var key : keys) assertTrue(filter.mightContain(key));
+		assertEquals(keys.length, filter.size());
+		assertEquals(filter.capacity() * 4L, filter.memory());
+		var falsePositives = 0;
+		for(int i = 0; i < 1_000_000; i++) {
+			if(filter.mightContain(random.nextLong())) falsePositives++;
+		}
+		assertTrue(falsePositives <= 1);
+		assertTrue(filter.expectedFpp() < 1e-8);
+	}
+	
+	@Test
+	public void removeKeys() {
+		var filter = new CuckooFilter(16);
+		filter.add(42L);
+		filter.add(43L);
+		assertTrue(filter.remove(42L));
+		assertFalse(filter.remove(42L));
+		assertFalse(filter.mightContain(42L));
+		assertTrue(filter.mightContain(43L));
+		filter.clear();
+		assertEquals(0, filter.size());
+		assertFalse(filter.mightContain(43L));
+	}
+	
+	@Test
+	public void overfilledFilterKeepsEveryKey() {
+		var filter = new CuckooFilter(16);
+		var added = 0L;
+		while(filter.add(added + 1)) added++;
+		assertTrue(added >= filter.capacity() * 0.9);
+		for(long key = 1; key <= added; key++) assertTrue(filter.mightContain(key));
+		assertFalse(filter.add(-1L));
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class OffHeapLongSetTest {
+	@Test
+	public void putThenInvalidate() {
+		var set = new OffHeapLongSet(1000, 60);
+		assertFalse(set.contains(42L));
+		set.put(42L);
+		set.put(42L);
+		assertTrue(set.contains(42L));
+		assertEquals(1, set.size());
+		set.invalidate(43L);
+		set.invalidate(42L);
+		assertFalse(set.contains(42L));
+		assertEquals(0, set.size());
+		set.put(0L);
+		assertFalse(set.contains(0L));
+	}
+	
+	@Test
+	public void growAndRemoveWithoutBreakingChains() {
+		var set = new OffHeapLongSet(0, 60);
+		var salts = new long[200_000];
+		var random = new Random(2020);
+		for(int i = 0; i < salts.length; i++) {
+			salts[i] = random.nextLong(1, Long.MAX_VALUE);
+			set.put(salts[i]);
+		}
+		assertEquals(salts.length, set.size());
+		assertTrue(set.capacity() >= salts.length);
+		assertEquals(set.capacity() * 12, set.memory());
+		for(int i = 0; i < salts.length; i += 2) set.invalidate(salts[i]);
+		for(int i = 0; i < salts.length; i++) {
+			assertEquals(i % 2 == 1, set.contains(salts[i]));
+		}
+		set.clear();
+		assertEquals(0, set.size());
+		assertFalse(set.contains(salts[1]));
+	}
+	
+	@Test
+	public void expiredEntriesAreReused() {
+		var set = new OffHeapLongSet(16, 60);
+		for(long salt = 1; salt <= 1000; salt++) set.put(salt, 0);
+		assertFalse(set.contains(1L));
+		assertTrue(set.size() < 1000);
+		set.put(7L);
+		assertTrue(set.contains(7L));
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.junit.Test;
+
+import cn.techarts.srt.Result;
+import cn.techarts.srt.RevocationMode;
+import cn.techarts.srt.impl.PssMysqlBasedTokenizer;
+import cn.techarts.srt.support.StandIns;
+
+public class PersisterTest {
+	private static final String DRIVER = "org.h2.Driver";
+	private static final String SELECT = "select name from srt_probe where id=?";
+	
+	private static String url(String db) {
+		return "jdbc:h2:mem:" + db + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+	}
+	
+	private static Persister probe(String db, String name) {
+		var result = new Persister(DRIVER, url(db), "sa", "");
+		result.update("create table if not exists srt_probe (id int primary key, name varchar(16))");
+		result.update("insert into srt_probe (id, name) values(?,?)", 1, name);
+		return result;
+	}
+	
+	@Test
+	public void routeLookupsByAge() {
+		var primary = probe("srt_primary", "primary");
+		var first = probe("srt_replica1", "replica1");
+		var second = probe("srt_replica2", "replica2");
+		var replicas = List.of(url("srt_replica1"), url("srt_replica2"));
+		var persister = new Persister(DRIVER, url("srt_primary"), "sa", "", replicas, 5);
+		try {
+			assertEquals("primary", persister.lookup(4, SELECT, row -> row.getString(1), 1));
+			var a = persister.lookup(5, SELECT, row -> row.getString(1), 1);
+			var b = persister.lookup(Integer.MAX_VALUE, SELECT, row -> row.getString(1), 1);
+			assertEquals(Set.of("replica1", "replica2"), new HashSet<>(List.of(a, b))); //Round robin
+			assertEquals("primary", persister.get(SELECT, row -> row.getString(1), 1));
+			persister.update("delete from srt_probe where id=?", 1); //Writes go to the primary
+			assertNull(persister.get(SELECT, row -> row.getString(1), 1));
+			assertEquals(1, persister.lookupAll(10, SELECT, row -> row.getString(1), 1).size());
+		}finally {
+			persister.close();
+			List.of(primary, first, second).forEach(Persister::close);
+		}
+	}
+	
+	@Test
+	public void readThePrimaryAfterDeletion() {
+		var primary = probe("srt_deleting", "primary");
+		var stale = probe("srt_stale", "stale");
+		var persister = new Persister(DRIVER, url("srt_deleting"), "sa", "", List.of(url("srt_stale")), 5);
+		try {
+			assertEquals("stale", persister.lookup(Integer.MAX_VALUE, SELECT, row -> row.getString(1), 1));
+			assertFalse(persister.hasDeletions());
+			persister.deleted(1);
+			persister.update("delete from srt_probe where id=?", 1);
+			assertTrue(persister.isDeleted(1));
+			assertFalse(persister.isDeleted(2));
+			var age = persister.isDeleted(1) ? 0 : Integer.MAX_VALUE; //As the tokenizers do
+			assertNull(persister.lookup(age, SELECT, row -> row.getString(1), 1));
+		}finally {
+			persister.close();
+			List.of(primary, stale).forEach(Persister::close);
+		}
+	}
+	
+	@Test
+	public void applyPoolSettings() {
+		var pool = new Properties();
+		pool.setProperty("poolName", "srt.test");
+		pool.setProperty("maximumPoolSize", "3");
+		pool.setProperty("connectionTimeout", "3000");
+		var persister = new Persister(DRIVER, url("srt_pool"), "sa", "", null, 0, pool);
+		try {
+			assertEquals(3, persister.getMaximumPoolSize());
+			assertEquals(0, persister.getActiveConnections());
+			assertEquals(0, persister.getThreadsAwaitingConnection());
+			assertTrue(persister.getTotalConnections() <= 3);
+		}finally {
+			persister.close();
+		}
+	}
+	
+	@Test
+	public void verifyAgainstTheLaggingReplica() {
+		StandIns.startMysql(); //The primary
+		var empty = StandIns.startMysql("srt_lagging", "schema.sql");
+		var replicas = List.of(url("srt_lagging"));
+		var persister = new Persister(DRIVER, url("srt"), "sa", "", replicas, 0);
+		try {
+			var tokenizer = new PssMysqlBasedTokenizer(persister, 60);
+			var config = StandIns.configuration(RevocationMode.PSS);
+			var session = StandIns.session(94001);
+			var token = tokenizer.issue(session, config, null);
+			//Missed in the replica, then found on the primary
+			assertEquals(Result.OK, tokenizer.verify(token, session, config));
+			var results = tokenizer.verify(List.of(token), List.of(session), config);
+			assertEquals(List.of(Result.OK), results);
+		}finally {
+			persister.close();
+			empty.close();
+		}
+	}
+	
+	/**
+	 * A young token is looked up on the primary in batches as well: the replica still has the row
+	 */
+	@Test
+	public void verifyYoungTokensInBatchesOnThePrimary() {
+		StandIns.startMysql(); //The primary
+		var stale = StandIns.startMysql("srt_stale_batch", "schema.sql");
+		var persister = new Persister(DRIVER, url("srt"), "sa", "", List.of(url("srt_stale_batch")), 60);
+		try {
+			var tokenizer = new PssMysqlBasedTokenizer(persister, 60);
+			var config = StandIns.configuration(RevocationMode.PSS);
+			var session = StandIns.session(94002);
+			var token = tokenizer.issue(session, config, null);
+			var uid = new String(session.getUid());
+			var rows = persister.getAll("select uid, salt, hash, expiry from srt_token_state where uid=?", 
+										row -> new Object[] {row.getString(1), row.getLong(2), row.getBytes(3), row.getLong(4)}, uid);
+			stale.update("insert into srt_token_state (uid, salt, hash, expiry) values(?,?,?,?)", rows.get(0));
+			persister.update("delete from srt_token_state where uid=?", uid); //Not replicated yet
+			var results = tokenizer.verify(List.of(token), List.of(session), config);
+			assertEquals(List.of(Result.ERR_STATE), results);
+		}finally {
+			persister.close();
+			stale.close();
+		}
+	}
+}
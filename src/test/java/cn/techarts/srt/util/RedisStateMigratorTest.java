@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import cn.techarts.srt.Result;
+import cn.techarts.srt.RevocationMode;
+import cn.techarts.srt.impl.GwmCompactRedisTokenizer;
+import cn.techarts.srt.impl.GwmRedisBasedTokenizer;
+import cn.techarts.srt.impl.PssCompactRedisTokenizer;
+import cn.techarts.srt.impl.PssRedisBasedTokenizer;
+import cn.techarts.srt.support.StandIns;
+
+/**
+ * Tokens issued with the text states are still valid after the migration.
+ */
+public class RedisStateMigratorTest {
+	@Test
+	public void migratePssStates() {
+		StandIns.startRedis();
+		var text = new PssRedisBasedTokenizer();
+		var compact = new PssCompactRedisTokenizer();
+		var config = StandIns.configuration(RevocationMode.PSS);
+		var session = StandIns.session(92001);
+		var token = text.issue(session, config, null);
+		assertEquals(Result.ERR_STATE, compact.verify(token, session, config));
+
+		assertTrue(RedisStateMigrator.migratePss(1) >= 1);
+		assertEquals(Result.OK, compact.verify(token, session, config));
+		assertEquals(1, compact.getStates(session.getUid()).size());
+		assertEquals(0, RedisStateMigrator.migratePss(1));
+	}
+
+	@Test
+	public void migrateGwmSalts() {
+		StandIns.startRedis();
+		var text = new GwmRedisBasedTokenizer();
+		var compact = new GwmCompactRedisTokenizer();
+		var config = StandIns.configuration(RevocationMode.GWM);
+		var session = StandIns.session(92002);
+		var token = text.issue(session, config, null);
+		assertEquals(Result.ERR_STATE, compact.verify(token, session, config));
+
+		assertTrue(RedisStateMigrator.migrateGwm(1) >= 1);
+		assertEquals(Result.OK, compact.verify(token, session, config));
+		assertEquals(Result.ERR_STATE, text.verify(token, session, config));
+	}
+
+	/**
+	 * A cluster keeps the states in the database 0, the PSS keys are hash-tagged.
+	 */
+	@Test
+	public void migrateTheDatabaseOfCluster() {
+		StandIns.startRedis();
+		var hash = "00112233445566778899aabbccddeeff";
+		try(var connection = Cacher.getConnection(0)){
+			connection.hset("{92003}", "1234567890123", hash);
+			connection.setex("9876543210987", 60, "0");
+		}
+		assertTrue(RedisStateMigrator.migratePss(0) >= 1);
+		assertTrue(RedisStateMigrator.migrateGwm(0) >= 1);
+		try(var connection = Cacher.getConnection(0)){
+			var fields = connection.hgetAll("{92003}".getBytes());
+			assertEquals(1, fields.size());
+			var field = fields.entrySet().iterator().next();
+			assertArrayEquals(Converter.toBytes(1234567890123L), field.getKey());
+			assertArrayEquals(Cryptor.toBytes(hash), field.getValue());
+			assertFalse(connection.exists("9876543210987"));
+			assertTrue(connection.ttl(Converter.toBytes(9876543210987L)) > 0);
+		}
+		assertTrue(RedisStateMigrator.isClusterEnabled("# Cluster\r\ncluster_enabled:1\r\n"));
+		assertFalse(RedisStateMigrator.isClusterEnabled("# Cluster\r\ncluster_enabled:0\r\n"));
+	}
+
+	@Test
+	public void parseTextStates() {
+		assertEquals(1234567890123L, RedisStateMigrator.toSalt("1234567890123".getBytes()));
+		assertEquals(0, RedisStateMigrator.toSalt(Converter.toBytes(1234567890123L)));
+		assertEquals(16, RedisStateMigrator.toHash("00112233445566778899aabbccddeeff".getBytes()).length);
+		assertEquals(null, RedisStateMigrator.toHash(new byte[32]));
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SaltCacheTest {
+	@Test
+	public void putThenInvalidate() {
+		var cache = new SaltCache(1000, 60);
+		assertEquals(1024, cache.capacity());
+		assertFalse(cache.contains(42L));
+		cache.put(42L);
+		assertTrue(cache.contains(42L));
+		cache.invalidate(43L);
+		assertTrue(cache.contains(42L));
+		cache.invalidate(42L);
+		assertFalse(cache.contains(42L));
+		cache.put(0L);
+		assertFalse(cache.contains(0L));
+	}
+	
+	@Test
+	public void boundedByCapacity() {
+		var cache = new SaltCache(16, 60);
+		for(long salt = 1; salt <= 1000; salt++) cache.put(salt);
+		var cached = 0;
+		for(long salt = 1; salt <= 1000; salt++) {
+			if(cache.contains(salt)) cached++;
+		}
+		assertTrue(cached > 0 && cached <= 16);
+		cache.clear();
+		assertFalse(cache.contains(1000L));
+	}
+	
+	@Test
+	public void expireAfterTtl() throws InterruptedException {
+		var cache = new SaltCache(16, 1);
+		cache.put(7L);
+		assertTrue(cache.contains(7L));
+		Thread.sleep(1100);
+		assertFalse(cache.contains(7L));
+	}
+	
+	@Test
+	public void skipThePutAfterAnInvalidation() {
+		var cache = new SaltCache(16, 60);
+		var stamp = cache.stamp(42L); //A lookup starts
+		cache.invalidate(42L); //Revoked meanwhile
+		cache.put(42L, stamp);
+		assertFalse(cache.contains(42L));
+		cache.put(42L, cache.stamp(42L));
+		assertTrue(cache.contains(42L));
+		stamp = cache.stamp(43L);
+		cache.clear();
+		cache.put(43L, stamp);
+		assertFalse(cache.contains(43L));
+	}
+}
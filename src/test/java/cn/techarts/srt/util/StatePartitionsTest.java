@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import cn.techarts.srt.Result;
+import cn.techarts.srt.RevocationMode;
+import cn.techarts.srt.core.MicroState;
+import cn.techarts.srt.impl.GwmMysqlBasedTokenizer;
+import cn.techarts.srt.impl.PssMysqlBasedTokenizer;
+import cn.techarts.srt.support.StandIns;
+
+public class StatePartitionsTest {
+	private static final int DAY = StatePartitions.DAY;
+	
+	@Test
+	public void planPartitions() {
+		var now = 100 * DAY + 10;
+		assertEquals(List.of(100, 101, 102), StatePartitions.missing(Map.of(), now, 2));
+		var bounds = new TreeMap<String, Long>();
+		bounds.put("p98", StatePartitions.upperBound(98));
+		bounds.put("p99", StatePartitions.upperBound(99));
+		bounds.put("p100", StatePartitions.upperBound(100));
+		assertEquals(List.of(101, 102), StatePartitions.missing(bounds, now, 2));
+		//The youngest token of p98 expired 1 day + 10 seconds ago
+		assertEquals(List.of("p98"), StatePartitions.expired(bounds, now, DAY));
+		assertEquals(List.of(), StatePartitions.expired(bounds, now, 2 * DAY));
+		assertEquals("p100", StatePartitions.toName(100));
+	}
+	
+	@Test
+	public void pruneWithTheTokenTimestamp() {
+		var persister = StandIns.startMysql("srt_partitioned", "schema-partitioned.sql");
+		var pss = new PssMysqlBasedTokenizer(persister, 60, null, true);
+		var gwm = new GwmMysqlBasedTokenizer(persister, 60, null, true);
+		var config = StandIns.configuration(RevocationMode.PSS);
+		var session = StandIns.session(95001);
+		var token = pss.issue(session, config, null);
+		assertEquals(Result.OK, pss.verify(token, session, config));
+		var gwmConfig = StandIns.configuration(RevocationMode.GWM);
+		var another = gwm.issue(session, gwmConfig, null);
+		assertEquals(Result.OK, gwm.verify(another, session, gwmConfig));
+		
+		//Out of the partitions of the token
+		persister.update("update srt_token_state set issued=issued-? where issued>0", DAY);
+		assertEquals(Result.ERR_STATE, pss.verify(token, session, config));
+		assertEquals(Result.ERR_STATE, gwm.verify(another, session, gwmConfig));
+		//The batch lookups carry the timestamps as well
+		assertEquals(List.of(Result.ERR_STATE), pss.verify(List.of(token), List.of(session), config));
+		assertEquals(List.of(Result.ERR_STATE), gwm.verify(List.of(another), List.of(session), gwmConfig));
+		persister.update("update srt_token_state set issued=issued+? where issued>0", DAY);
+		assertEquals(List.of(Result.OK), pss.verify(List.of(token), List.of(session), config));
+	}
+	
+	@Test
+	public void coverTheTimestampsOfTheKeys() {
+		var first = new MicroState(1L);
+		var second = new MicroState(2L);
+		first.setTimestamp(1000 * DAY);
+		second.setTimestamp(1000 * DAY + 60);
+		var range = StatePartitions.range(List.of(first, second));
+		assertEquals(1000 * DAY - StatePartitions.SKEW, range[0]);
+		assertEquals(1000 * DAY + 60 + StatePartitions.SKEW, range[1]);
+		assertEquals(null, StatePartitions.range(List.of(first, new MicroState(3L))));
+	}
+	
+	/**
+	 * The batch and the write-behind INSERTs match the columns of schema-partitioned.sql
+	 */
+	@Test
+	public void insertPartitionedRowsInBatches() {
+		var persister = StandIns.startMysql("srt_partitioned_batch", "schema-partitioned.sql");
+		var config = StandIns.configuration(RevocationMode.PSS);
+		var sessions = List.of(StandIns.session(95002), StandIns.session(95003));
+		var pss = new PssMysqlBasedTokenizer(persister, 60, null, true);
+		var tokens = pss.issue(sessions, config);
+		assertEquals(List.of(Result.OK, Result.OK), pss.verify(tokens, sessions, config));
+		
+		var buffer = GwmMysqlBasedTokenizer.newWriteBehind(persister, 60000, 100, true);
+		var buffered = new GwmMysqlBasedTokenizer(persister, 60, buffer, true);
+		var gwmConfig = StandIns.configuration(RevocationMode.GWM);
+		var token = buffered.issue(sessions.get(0), gwmConfig, null);
+		assertEquals(1, buffer.flush());
+		assertEquals(0, buffer.getFailures());
+		var direct = new GwmMysqlBasedTokenizer(persister, 60, null, true);
+		assertEquals(Result.OK, direct.verify(token, sessions.get(0), gwmConfig));
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2024 techarts.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cn.techarts.srt.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import cn.techarts.srt.Result;
+import cn.techarts.srt.RevocationMode;
+import cn.techarts.srt.impl.PssMysqlBasedTokenizer;
+import cn.techarts.srt.support.StandIns;
+
+public class StateSweeperTest {
+	@Test
+	public void deleteExpiredStatesInBatches() {
+		var persister = StandIns.startMysql();
+		var tokenizer = new PssMysqlBasedTokenizer(persister, 60);
+		var config = StandIns.configuration(RevocationMode.PSS);
+		var alice = StandIns.session(91001);
+		var bob = StandIns.session(91002);
+		var first = tokenizer.issue(alice, config, null);
+		var second = tokenizer.issue(bob, config, null);
+		var sweeper = new StateSweeper(persister, 60, 1);
+		var now = System.currentTimeMillis() / 1000;
+		assertEquals(0, sweeper.sweep(now));
+		assertEquals(Result.OK, tokenizer.verify(first, alice, config));
+
+		assertEquals(2, sweeper.sweep(now + 61));
+		assertEquals(Result.ERR_STATE, tokenizer.verify(first, alice, config));
+		assertEquals(Result.ERR_STATE, tokenizer.verify(second, bob, config));
+	}
+}